@@ -0,0 +1,47 @@
+package dk.easv.bll.bench;
+
+import dk.easv.bll.bot.AlphaBetaBot;
+import dk.easv.bll.bot.MortenBoT;
+import dk.easv.bll.bot.RandomBot;
+import dk.easv.bll.game.GameState;
+import dk.easv.bll.game.IGameState;
+
+import java.util.List;
+
+/**
+ * The depth AlphaBetaBot reaches and its nodes per second on a set of positions,
+ * one line per move, and its results against RandomBot and MortenBoT.
+ * Usage: AlphaBetaBenchmark [time per move in ms] [games per match]
+ */
+public class AlphaBetaBenchmark {
+
+    private static final int POSITIONS = 20;
+
+    public static void main(String[] args) {
+        int timePerMove = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int games = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+
+        AlphaBetaBot bot = new AlphaBetaBot();
+        List<IGameState> positions = Positions.random(POSITIONS, 0, 50, 17);
+        int depths = 0;
+        long nodes = 0;
+        double seconds = 0;
+        for (IGameState position : positions) {
+            GameState state = new GameState(position);
+            state.setTimePerMove(timePerMove);
+            long start = System.nanoTime();
+            bot.doMove(state);
+            double elapsed = (System.nanoTime() - start) / 1e9;
+            System.out.printf("move %2d: depth %2d %10d nodes %9.0f nodes/sec %6.0f ms score %d%n",
+                    position.getMoveNumber(), bot.getLastDepth(), bot.getLastNodes(),
+                    bot.getLastNodesPerSecond(), elapsed * 1000, bot.getLastScore());
+            depths += bot.getLastDepth();
+            nodes += bot.getLastNodes();
+            seconds += elapsed;
+        }
+        System.out.printf("average depth %.1f, %.0f nodes/sec%n", (double) depths / positions.size(), nodes / seconds);
+
+        System.out.println("vs RandomBot: " + BotMatch.play(AlphaBetaBot::new, RandomBot::new, games, timePerMove));
+        System.out.println("vs MortenBoT: " + BotMatch.play(AlphaBetaBot::new, MortenBoT::new, games, timePerMove));
+    }
+}
@@ -0,0 +1,85 @@
+package dk.easv.bll.bench;
+
+import dk.easv.bll.bot.IBot;
+import dk.easv.bll.game.GameManager;
+import dk.easv.bll.game.GameState;
+
+import java.util.function.Supplier;
+
+/**
+ * Plays two bots against each other through the GameManager, for the strength
+ * benchmarks. The bots take turns to start, and a new pair is created for every game.
+ */
+public class BotMatch {
+
+    private int wins = 0;
+    private int losses = 0;
+    private int ties = 0;
+
+    /**
+     * @param bot Creates the bot the result is counted for
+     * @param opponent Creates the bot it plays against
+     * @param games The number of games to play
+     * @return The result, seen from bot
+     */
+    public static BotMatch play(Supplier<IBot> bot, Supplier<IBot> opponent, int games) {
+        return play(bot, opponent, games, new GameState().getTimePerMove());
+    }
+
+    /**
+     * @param timePerMove The time each bot is given per move in milliseconds, see IGameState.getTimePerMove()
+     * @see #play(Supplier, Supplier, int)
+     */
+    public static BotMatch play(Supplier<IBot> bot, Supplier<IBot> opponent, int games, int timePerMove) {
+        BotMatch match = new BotMatch();
+        for (int game = 0; game < games; game++) {
+            boolean botStarts = game % 2 == 0;
+            IBot first = botStarts ? bot.get() : opponent.get();
+            IBot second = botStarts ? opponent.get() : bot.get();
+            GameManager manager = new GameManager(new GameState(), first, second);
+            manager.getCurrentState().setTimePerMove(timePerMove);
+            boolean invalid = false;
+            while (manager.getGameOver() == GameManager.GameOverState.Active
+                    && manager.getCurrentState().getField().getActiveMask() != 0) {
+                if (!manager.updateGame()) {
+                    invalid = true; // An invalid move loses the game
+                    break;
+                }
+            }
+            // After a win (or an invalid move) the current player is the loser
+            int loser = manager.getCurrentPlayer();
+            if (!invalid && manager.getGameOver() != GameManager.GameOverState.Win)
+                match.ties++;
+            else if ((loser == 0) == botStarts)
+                match.losses++;
+            else
+                match.wins++;
+        }
+        return match;
+    }
+
+    public int getWins() {
+        return wins;
+    }
+
+    public int getLosses() {
+        return losses;
+    }
+
+    public int getTies() {
+        return ties;
+    }
+
+    /**
+     * @return The share of the points won by the bot, counting a tie as half a win
+     */
+    public double getScore() {
+        int games = wins + losses + ties;
+        return games == 0 ? 0 : (wins + 0.5 * ties) / games;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("+%d -%d =%d (%.0f%%)", wins, losses, ties, 100 * getScore());
+    }
+}
@@ -0,0 +1,83 @@
+package dk.easv.bll.bench;
+
+import dk.easv.bll.bot.MortenBoT;
+import dk.easv.bll.bot.search.EndgameSolver;
+import dk.easv.bll.bot.search.TranspositionTable;
+import dk.easv.bll.game.GameSimulator;
+import dk.easv.bll.game.GameState;
+import dk.easv.bll.game.IGameState;
+import dk.easv.bll.move.IMove;
+
+import java.util.List;
+
+/**
+ * How long the EndgameSolver takes by the number of playable cells left, and how
+ * often it overrides the move MortenBoT plays without it, and how often that move
+ * would have given away a proven win or draw.
+ */
+public class EndgameSolverBenchmark {
+
+    private static final int POSITIONS = 20;
+    private static final long GIVE_UP_MS = 5000;
+
+    public static void main(String[] args) {
+        TranspositionTable table = new TranspositionTable(1 << 20);
+        EndgameSolver solver = new EndgameSolver(table);
+        for (int cells = 10; cells <= 40; cells += 5) {
+            int solved = 0;
+            long nanos = 0;
+            long maxNanos = 0;
+            long nodes = 0;
+            for (IGameState position : Positions.endgame(POSITIONS, cells - 4, cells, cells)) {
+                table.clear(); // Every position is solved from scratch
+                long start = System.nanoTime();
+                boolean done = solver.solve(GameSimulator.copyOf(position), start + GIVE_UP_MS * 1_000_000);
+                long elapsed = System.nanoTime() - start;
+                if (done) {
+                    solved++;
+                    nanos += elapsed;
+                    maxNanos = Math.max(maxNanos, elapsed);
+                    nodes += solver.getNodes();
+                }
+            }
+            System.out.printf("%2d-%2d playable cells: %2d/%d solved, %8.1f ms average, %8.1f ms max, %9d nodes average%n",
+                    cells - 4, cells, solved, POSITIONS, solved == 0 ? 0 : nanos / 1e6 / solved, maxNanos / 1e6,
+                    solved == 0 ? 0 : nodes / solved);
+        }
+
+        // The positions the solver takes over in MortenBoT by default
+        int threshold = new MortenBoT().getEndgameThreshold();
+        MortenBoT mcts = new MortenBoT();
+        mcts.setEndgameThreshold(0);
+        mcts.setReuseTree(false);
+        int solved = 0;
+        int different = 0;
+        int worse = 0;
+        for (IGameState position : Positions.endgame(POSITIONS * 5, 1, threshold, 99)) {
+            GameSimulator simulator = GameSimulator.copyOf(position);
+            if (!solver.solve(simulator, System.nanoTime() + GIVE_UP_MS * 1_000_000))
+                continue;
+            solved++;
+            int result = solver.getResult();
+            int best = solver.getBestMove();
+            IMove move = mcts.doMove(new GameState(position));
+            int cell = move.getX() * 9 + move.getY();
+            if (cell == best)
+                continue;
+            different++;
+            // The result of the MCTS move, for the player who played it
+            simulator.makeMove(move.getX(), move.getY());
+            int mctsResult = simulator.isTerminal() ? resultAfter(simulator) : (solver.solve(simulator, System.nanoTime() + Long.MAX_VALUE) ? -solver.getResult() : result);
+            simulator.unmakeMove();
+            if (mctsResult < result)
+                worse++;
+        }
+        System.out.printf("threshold %d: %d positions solved, solver overrides the move in %d, which gave away the result in %d%n",
+                threshold, solved, different, worse);
+    }
+
+    // The result of a finished game for the player who made the last move
+    private static int resultAfter(GameSimulator simulator) {
+        return simulator.getWinner() == -1 ? EndgameSolver.DRAW : EndgameSolver.WIN;
+    }
+}
@@ -0,0 +1,183 @@
+package dk.easv.bll.bench;
+
+import dk.easv.bll.bot.search.IncrementalEvaluator;
+import dk.easv.bll.field.IField;
+import dk.easv.bll.game.GameSimulator;
+import dk.easv.bll.game.GameState;
+import dk.easv.bll.game.RulesTable;
+
+import java.util.SplittableRandom;
+
+/**
+ * IncrementalEvaluator against the String based evaluateBoard MortenBoT used before it.
+ * First checks that both give the same score after every move (and every move taken back)
+ * of random games, then measures evaluations per second along random playouts for the
+ * String scorer, evaluateField from scratch and the incremental evaluator.
+ * Usage: EvaluatorBenchmark [games]
+ */
+public class EvaluatorBenchmark {
+
+    private static final long RUN_MS = 2000;
+
+    public static void main(String[] args) {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        SplittableRandom random = new SplittableRandom(29);
+        IncrementalEvaluator evaluator = new IncrementalEvaluator();
+        int[] cells = new int[81];
+        long positions = 0;
+        long mismatches = 0;
+        for (int game = 0; game < games; game++) {
+            GameSimulator simulator = new GameSimulator(new GameState());
+            evaluator.reset(simulator.getCurrentState().getField());
+            while (!simulator.isTerminal()) {
+                int cell = cells[random.nextInt(simulator.getAvailableMoves(cells))];
+                simulator.makeMove(cell / 9, cell % 9);
+                evaluator.update(simulator.getCurrentState().getField(), micro(cell));
+                mismatches += check(simulator, evaluator);
+                positions++;
+                // Now and then take the move back and play it again, so unmakeMove is checked too
+                if (random.nextInt(4) == 0) {
+                    simulator.unmakeMove();
+                    evaluator.update(simulator.getCurrentState().getField(), micro(cell));
+                    mismatches += check(simulator, evaluator);
+                    simulator.makeMove(cell / 9, cell % 9);
+                    evaluator.update(simulator.getCurrentState().getField(), micro(cell));
+                    positions++;
+                }
+            }
+        }
+        System.out.printf("%d positions, %d mismatches%n", positions, mismatches);
+
+        for (String scorer : new String[]{"String", "from scratch", "incremental"})
+            System.out.printf("%-12s %12.0f evaluations/sec%n", scorer, throughput(scorer));
+    }
+
+    private static int check(GameSimulator simulator, IncrementalEvaluator evaluator) {
+        IField field = simulator.getCurrentState().getField();
+        int expected = stringScore(field);
+        return expected == evaluator.evaluate(field) && expected == IncrementalEvaluator.evaluateField(field) ? 0 : 1;
+    }
+
+    private static int micro(int cell) {
+        return (cell / 27) * 3 + (cell % 9) / 3;
+    }
+
+    // Evaluates after every move of random playouts, like MortenBoT.simulate
+    private static double throughput(String scorer) {
+        SplittableRandom random = new SplittableRandom(31);
+        IncrementalEvaluator evaluator = new IncrementalEvaluator();
+        int[] cells = new int[81];
+        long evaluations = 0;
+        long sink = 0;
+        long start = System.nanoTime();
+        long end = start + RUN_MS * 1_000_000;
+        while (System.nanoTime() < end) {
+            GameSimulator simulator = new GameSimulator(new GameState());
+            IField field = simulator.getCurrentState().getField();
+            evaluator.reset(field);
+            while (!simulator.isTerminal()) {
+                int cell = cells[random.nextInt(simulator.getAvailableMoves(cells))];
+                simulator.play(cell / 9, cell % 9);
+                if (scorer.equals("String")) {
+                    sink += stringScore(field);
+                } else if (scorer.equals("from scratch")) {
+                    sink += IncrementalEvaluator.evaluateField(field);
+                } else {
+                    evaluator.update(field, micro(cell));
+                    sink += evaluator.evaluate(field);
+                }
+                evaluations++;
+            }
+        }
+        if (sink == 42) System.out.print(""); // Keeps the scores from being optimized away
+        return evaluations / ((System.nanoTime() - start) / 1e9);
+    }
+
+    // The String scorer, as MortenBoT.evaluateBoard had it
+
+    private static int stringScore(IField field) {
+        int score = 0;
+        String[][] board = field.getBoard();
+        String[][] macroBoard = field.getMacroboard();
+        for (int x = 0; x < 3; x++) {
+            for (int y = 0; y < 3; y++) {
+                if (macroBoard[x][y].equals("0")) score += 15;
+                else if (macroBoard[x][y].equals("1")) score -= 15;
+                if (macroBoard[x][y].equals(IField.AVAILABLE_FIELD)) score += 10;
+            }
+        }
+        if (RulesTable.isWin(RulesTable.ownerMask(board, 0, 0, "0"))) score += 20;
+        if (RulesTable.isWin(RulesTable.ownerMask(board, 0, 0, "1"))) score -= 20;
+        int[][] positionValues = {
+                {3, 2, 3, 2, 3, 2, 3, 2, 3},
+                {2, 2, 2, 4, 2, 4, 2, 2, 2},
+                {3, 2, 3, 2, 3, 2, 3, 2, 3},
+                {2, 4, 2, 5, 3, 5, 2, 4, 2},
+                {3, 2, 3, 3, 1, 3, 3, 2, 3},
+                {2, 4, 2, 5, 3, 5, 2, 4, 2},
+                {3, 2, 3, 2, 3, 2, 3, 2, 3},
+                {2, 2, 2, 4, 2, 4, 2, 2, 2},
+                {3, 2, 3, 2, 3, 2, 3, 2, 3}
+        };
+        for (int x = 0; x < 9; x++) {
+            for (int y = 0; y < 9; y++) {
+                if (board[x][y].equals("0")) score += positionValues[x][y];
+                else if (board[x][y].equals("1")) score -= positionValues[x][y];
+            }
+        }
+        score += 10 * countThreats(board, "0") - 10 * countThreats(board, "1");
+        score += 3 * countComboMoves(board, "0") - 3 * countComboMoves(board, "1");
+        String center = macroBoard[1][1];
+        if (center.equals("0")) score += 50;
+        else if (center.equals("1")) score -= 50;
+        for (String player : new String[]{"0", "1"}) {
+            int sign = player.equals("0") ? 1 : -1;
+            for (int i = 0; i < 3; i++) {
+                if (macroBoard[i][0].equals(player) && macroBoard[i][1].equals(player) && macroBoard[i][2].equals(IField.AVAILABLE_FIELD)) score += sign * 30;
+                if (macroBoard[0][i].equals(player) && macroBoard[1][i].equals(player) && macroBoard[2][i].equals(IField.AVAILABLE_FIELD)) score += sign * 30;
+            }
+            if (macroBoard[0][0].equals(player) && macroBoard[1][1].equals(player) && macroBoard[2][2].equals(IField.AVAILABLE_FIELD)) score += sign * 30;
+            if (macroBoard[0][2].equals(player) && macroBoard[1][1].equals(player) && macroBoard[2][0].equals(IField.AVAILABLE_FIELD)) score += sign * 30;
+        }
+        return score;
+    }
+
+    private static int countThreats(String[][] board, String player) {
+        int[][][] lines = {
+                {{0, 0}, {0, 1}, {0, 2}}, {{1, 0}, {1, 1}, {1, 2}}, {{2, 0}, {2, 1}, {2, 2}},
+                {{0, 0}, {1, 0}, {2, 0}}, {{0, 1}, {1, 1}, {2, 1}}, {{0, 2}, {1, 2}, {2, 2}},
+                {{0, 0}, {1, 1}, {2, 2}}, {{0, 2}, {1, 1}, {2, 0}}
+        };
+        return count(board, player, lines, 2);
+    }
+
+    private static int countComboMoves(String[][] board, String player) {
+        int[][][] comboPatterns = {
+                {{0, 0}, {0, 1}}, {{0, 0}, {1, 0}}, {{0, 0}, {1, 1}},
+                {{0, 2}, {0, 1}}, {{0, 2}, {1, 2}}, {{0, 2}, {1, 1}},
+                {{2, 0}, {1, 0}}, {{2, 0}, {2, 1}}, {{2, 0}, {1, 1}},
+                {{2, 2}, {1, 2}}, {{2, 2}, {2, 1}}, {{2, 2}, {1, 1}}
+        };
+        return count(board, player, comboPatterns, 1);
+    }
+
+    // Patterns in any microboard with the given number of the player's stones and one empty cell
+    private static int count(String[][] board, String player, int[][][] patterns, int stones) {
+        int found = 0;
+        for (int bx = 0; bx < 9; bx += 3) {
+            for (int by = 0; by < 9; by += 3) {
+                for (int[][] pattern : patterns) {
+                    int countPlayer = 0;
+                    int countEmpty = 0;
+                    for (int[] cell : pattern) {
+                        String val = board[bx + cell[0]][by + cell[1]];
+                        if (val.equals(player)) countPlayer++;
+                        else if (val.equals(".")) countEmpty++;
+                    }
+                    if (countPlayer == stones && countEmpty == 1) found++;
+                }
+            }
+        }
+        return found;
+    }
+}
@@ -0,0 +1,137 @@
+package dk.easv.bll.bench;
+
+import dk.easv.bll.field.BitboardField;
+import dk.easv.bll.field.Field;
+import dk.easv.bll.field.IField;
+import dk.easv.bll.game.GameManager;
+import dk.easv.bll.game.GameSimulator;
+import dk.easv.bll.game.GameState;
+import dk.easv.bll.move.IMove;
+import dk.easv.bll.move.Move;
+
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.function.Supplier;
+
+/**
+ * Plays random games through the GameManager on each field implementation
+ * and prints how many playouts per second each of them manages.
+ * The "int[] moves" run uses the allocation-free move generation instead of
+ * building the getAvailableMoves() list. "String rules" is the original
+ * String Field and GameManager (see StringRules), the baseline the others are
+ * measured against, and "GameSimulator" is an allocation-free playout on the
+ * masks, made with makeMove and taken back with unmakeMove, that never touches
+ * the String views.
+ */
+public class FieldBenchmark {
+
+    private static final long RUN_MS = 3000;
+
+    public static void main(String[] args) {
+        for (int i = 0; i < 2; i++) { // The first round warms up
+            double baseline = runStrings();
+            run("Field", Field::new);
+            run("BitboardField", BitboardField::new);
+            runMasks();
+            double simulator = runSimulator();
+            System.out.printf("GameSimulator is %.1fx the original String rules%n", simulator / baseline);
+        }
+    }
+
+    // The original rules on Strings, with a new list of moves for every step
+    private static double runStrings() {
+        Random rnd = new Random(42);
+        long playouts = 0;
+        long moves = 0;
+        long start = System.nanoTime();
+        long end = start + RUN_MS * 1_000_000;
+        while (System.nanoTime() < end) {
+            StringRules game = new StringRules();
+            List<IMove> avail = game.getAvailableMoves();
+            while (game.getGameOver() == GameManager.GameOverState.Active && !avail.isEmpty()) {
+                game.play(avail.get(rnd.nextInt(avail.size())));
+                avail = game.getAvailableMoves();
+                moves++;
+            }
+            playouts++;
+        }
+        return print("String rules", playouts, moves, start);
+    }
+
+    // One simulator for every playout, which is taken back move by move to the empty board
+    private static double runSimulator() {
+        SplittableRandom rnd = new SplittableRandom(42); // As PlayoutEngine uses
+        long playouts = 0;
+        long moves = 0;
+        long start = System.nanoTime();
+        long end = start + RUN_MS * 1_000_000;
+        int[] cells = new int[81];
+        GameSimulator simulator = new GameSimulator(new GameState(new BitboardField()));
+        while (System.nanoTime() < end) {
+            while (!simulator.isTerminal()) {
+                int cell = cells[rnd.nextInt(simulator.getAvailableMoves(cells))];
+                simulator.makeMove(cell / 9, cell % 9);
+                moves++;
+            }
+            while (simulator.unmakeMove()) {
+                // Back to the empty board
+            }
+            playouts++;
+        }
+        return print("GameSimulator", playouts, moves, start);
+    }
+
+    private static double print(String name, long playouts, long moves, long start) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%-14s %10.0f playouts/sec %12.0f moves/sec%n", name, playouts / seconds, moves / seconds);
+        return playouts / seconds;
+    }
+
+    // Same playout, but with the allocation-free move generation and a single reused Move
+    private static void runMasks() {
+        Random rnd = new Random(42);
+        long playouts = 0;
+        long moves = 0;
+        long start = System.nanoTime();
+        long end = start + RUN_MS * 1_000_000;
+        int[] cells = new int[81];
+        Move move = new Move(0, 0);
+        while (System.nanoTime() < end) {
+            GameManager game = new GameManager(new GameState(new BitboardField()));
+            IField field = game.getCurrentState().getField();
+            int count = field.getAvailableMoves(cells);
+            while (game.getGameOver() == GameManager.GameOverState.Active && count > 0) {
+                int cell = cells[rnd.nextInt(count)];
+                move.setX(cell / 9);
+                move.setY(cell % 9);
+                game.updateGame(move);
+                count = field.getAvailableMoves(cells);
+                moves++;
+            }
+            playouts++;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%-14s %10.0f playouts/sec %12.0f moves/sec%n", "int[] moves", playouts / seconds, moves / seconds);
+    }
+
+    private static void run(String name, Supplier<IField> fieldFactory) {
+        Random rnd = new Random(42);
+        long playouts = 0;
+        long moves = 0;
+        long start = System.nanoTime();
+        long end = start + RUN_MS * 1_000_000;
+        while (System.nanoTime() < end) {
+            GameManager game = new GameManager(new GameState(fieldFactory.get()));
+            List<IMove> avail = game.getCurrentState().getField().getAvailableMoves();
+            while (game.getGameOver() == GameManager.GameOverState.Active && !avail.isEmpty()) {
+                game.updateGame(avail.get(rnd.nextInt(avail.size())));
+                avail = game.getCurrentState().getField().getAvailableMoves();
+                moves++;
+            }
+            playouts++;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%-14s %10.0f playouts/sec %12.0f moves/sec%n", name, playouts / seconds, moves / seconds);
+    }
+}
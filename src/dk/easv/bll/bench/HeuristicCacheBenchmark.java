@@ -0,0 +1,46 @@
+package dk.easv.bll.bench;
+
+import dk.easv.bll.bot.BotTest;
+import dk.easv.bll.bot.MortenBoT;
+import dk.easv.bll.game.GameState;
+import dk.easv.bll.game.IGameState;
+
+import java.util.List;
+import java.util.function.IntSupplier;
+import java.util.function.Function;
+
+/**
+ * MCTS iterations per second of BotTest and MortenBoT over a set of mid-game
+ * positions. The first rounds warm up; the last one is the one to compare.
+ */
+public class HeuristicCacheBenchmark {
+
+    private static final int POSITIONS = 40;
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) {
+        List<IGameState> positions = Positions.random(POSITIONS, 10, 40, 11);
+        BotTest botTest = new BotTest();
+        botTest.setReuseTree(false);
+        run("BotTest", positions, state -> botTest.doMove(state), botTest::getLastIterations);
+        MortenBoT mortenBoT = new MortenBoT();
+        mortenBoT.setReuseTree(false);
+        run("MortenBoT", positions, state -> mortenBoT.doMove(state), mortenBoT::getLastIterations);
+    }
+
+    private static void run(String name, List<IGameState> positions, Function<IGameState, ?> doMove, IntSupplier iterations) {
+        for (int round = 0; round < ROUNDS; round++) {
+            long total = 0;
+            long nanos = 0;
+            for (IGameState position : positions) {
+                long start = System.nanoTime();
+                doMove.apply(new GameState(position));
+                if (iterations.getAsInt() > 0) { // Moves found without searching are left out
+                    nanos += System.nanoTime() - start;
+                    total += iterations.getAsInt();
+                }
+            }
+            System.out.printf("%-10s round %d: %7.0f iterations/sec%n", name, round, total / (nanos / 1e9));
+        }
+    }
+}
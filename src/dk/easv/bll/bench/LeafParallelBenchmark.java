@@ -0,0 +1,47 @@
+package dk.easv.bll.bench;
+
+import dk.easv.bll.bot.MortenBoT;
+import dk.easv.bll.game.GameState;
+import dk.easv.bll.game.IGameState;
+
+import java.util.List;
+
+/**
+ * Leaf parallel MortenBoT: iterations/sec, playouts/sec and the score against
+ * one playout per leaf, for batches of 1, 4, 16 and 64 playouts per leaf.
+ * Pass the number of games per row as the first argument.
+ */
+public class LeafParallelBenchmark {
+
+    private static final int[] BATCHES = {1, 4, 16, 64};
+    private static final int POSITIONS = 20;
+
+    public static void main(String[] args) {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        List<IGameState> positions = Positions.random(POSITIONS, 10, 40, 11);
+        System.out.println("Cores: " + Runtime.getRuntime().availableProcessors());
+        for (int batch : BATCHES) {
+            MortenBoT bot = bot(batch);
+            long iterations = 0;
+            long nanos = 0;
+            for (IGameState position : positions) {
+                long start = System.nanoTime();
+                bot.doMove(new GameState(position));
+                if (bot.getLastIterations() > 0) { // Moves found without searching are left out
+                    nanos += System.nanoTime() - start;
+                    iterations += bot.getLastIterations();
+                }
+            }
+            double seconds = nanos / 1e9;
+            BotMatch match = BotMatch.play(() -> bot(batch), () -> bot(1), games);
+            System.out.printf("K = %2d %7.0f iterations/sec %8.0f playouts/sec   vs K = 1 %s%n",
+                    batch, iterations / seconds, iterations * batch / seconds, match);
+        }
+    }
+
+    private static MortenBoT bot(int batch) {
+        MortenBoT bot = new MortenBoT();
+        bot.setLeafBatch(batch);
+        return bot;
+    }
+}
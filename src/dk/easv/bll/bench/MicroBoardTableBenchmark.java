@@ -0,0 +1,62 @@
+package dk.easv.bll.bench;
+
+import dk.easv.bll.game.MicroBoardTable;
+import dk.easv.bll.game.RulesTable;
+
+import java.util.SplittableRandom;
+
+/**
+ * The build time and memory of MicroBoardTable, and how fast it answers "which cells
+ * win this microboard for the player" compared with RulesTable, which needs the
+ * threats of the player's stones masked with the empty cells.
+ */
+public class MicroBoardTableBenchmark {
+
+    private static final long RUN_MS = 2000;
+    private static final int BOARDS = 4096;
+
+    public static void main(String[] args) {
+        System.out.printf("built in %.2f ms, %d bytes%n",
+                MicroBoardTable.getBuildNanos() / 1e6, MicroBoardTable.getBytes());
+
+        // Random boards that could happen in a game
+        SplittableRandom random = new SplittableRandom(37);
+        int[] stones0 = new int[BOARDS];
+        int[] stones1 = new int[BOARDS];
+        for (int i = 0; i < BOARDS; i++) {
+            int cells = random.nextInt(9);
+            for (int k = 0; k < cells; k++) {
+                int bit = 1 << random.nextInt(9);
+                if (((stones0[i] | stones1[i]) & bit) == 0) {
+                    if (k % 2 == 0) stones0[i] |= bit;
+                    else stones1[i] |= bit;
+                }
+            }
+        }
+        for (int round = 0; round < 2; round++) { // The first round warms up
+            System.out.printf("RulesTable      %6.0f M lookups/sec%n", rate(stones0, stones1, false));
+            System.out.printf("MicroBoardTable %6.0f M lookups/sec%n", rate(stones0, stones1, true));
+        }
+    }
+
+    private static double rate(int[] stones0, int[] stones1, boolean table) {
+        long lookups = 0;
+        long sink = 0;
+        long start = System.nanoTime();
+        long end = start + RUN_MS * 1_000_000;
+        while (System.nanoTime() < end) {
+            for (int i = 0; i < BOARDS; i++) {
+                if (table) {
+                    int index = MicroBoardTable.index(stones0[i], stones1[i]);
+                    sink += MicroBoardTable.winningCells(index, 0) + MicroBoardTable.winningCells(index, 1);
+                } else {
+                    int empty = ~(stones0[i] | stones1[i]) & RulesTable.FULL_MASK;
+                    sink += (RulesTable.threats(stones0[i]) & empty) + (RulesTable.threats(stones1[i]) & empty);
+                }
+            }
+            lookups += BOARDS;
+        }
+        if (sink == 42) System.out.print(""); // Keeps the lookups from being optimized away
+        return lookups / ((System.nanoTime() - start) / 1e3);
+    }
+}
@@ -0,0 +1,50 @@
+package dk.easv.bll.bench;
+
+import dk.easv.bll.bot.MortenBoT;
+import dk.easv.bll.game.GameState;
+import dk.easv.bll.game.IGameState;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+/**
+ * Nodes created per second and bytes allocated per move by a single-threaded
+ * MortenBoT search, over a set of mid-game positions. The bytes are counted
+ * for the searching thread with com.sun.management.ThreadMXBean.
+ */
+public class NodeArenaBenchmark {
+
+    private static final int POSITIONS = 40;
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        List<IGameState> positions = Positions.random(POSITIONS, 10, 40, 11);
+        long[] nodes = new long[1];
+        MortenBoT bot = new MortenBoT();
+        bot.setNodeListener(state -> nodes[0]++);
+        for (int round = 0; round < ROUNDS; round++) { // The first round warms up
+            nodes[0] = 0;
+            long iterations = 0;
+            long moves = 0;
+            long nanos = 0;
+            long bytes = 0;
+            for (IGameState position : positions) {
+                IGameState copy = new GameState(position);
+                long allocated = threads.getThreadAllocatedBytes(thread);
+                long start = System.nanoTime();
+                bot.doMove(copy);
+                long time = System.nanoTime() - start;
+                if (bot.getLastIterations() > 0) { // Moves found without searching are left out
+                    nanos += time;
+                    bytes += threads.getThreadAllocatedBytes(thread) - allocated;
+                    iterations += bot.getLastIterations();
+                    moves++;
+                }
+            }
+            System.out.printf("round %d: %8.0f nodes/sec %6.0f iterations/sec %10.0f bytes/move %8.0f bytes/node%n",
+                    round, nodes[0] / (nanos / 1e9), iterations / (nanos / 1e9), (double) bytes / moves, (double) bytes / nodes[0]);
+        }
+    }
+}
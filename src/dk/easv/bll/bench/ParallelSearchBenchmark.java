@@ -0,0 +1,45 @@
+package dk.easv.bll.bench;
+
+import dk.easv.bll.bot.MortenBoT;
+import dk.easv.bll.game.GameState;
+import dk.easv.bll.game.IGameState;
+
+import java.util.List;
+
+/**
+ * Scaling curve of the tree-parallel MortenBoT: iterations/sec over a set of
+ * mid-game positions, and the score against the single-threaded bot, at
+ * 1, 2, 4, 8 and 16 threads. Pass the number of games per row as the first argument.
+ */
+public class ParallelSearchBenchmark {
+
+    private static final int[] THREADS = {1, 2, 4, 8, 16};
+    private static final int POSITIONS = 20;
+
+    public static void main(String[] args) {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        List<IGameState> positions = Positions.random(POSITIONS, 10, 40, 11);
+        System.out.println("Cores: " + Runtime.getRuntime().availableProcessors());
+        for (int threads : THREADS) {
+            MortenBoT bot = new MortenBoT();
+            bot.setThreads(threads);
+            long iterations = 0;
+            long nanos = 0;
+            for (IGameState position : positions) {
+                long start = System.nanoTime();
+                bot.doMove(new GameState(position));
+                if (bot.getLastIterations() > 0) { // Moves found without searching are left out
+                    nanos += System.nanoTime() - start;
+                    iterations += bot.getLastIterations();
+                }
+            }
+            BotMatch match = BotMatch.play(() -> {
+                MortenBoT parallel = new MortenBoT();
+                parallel.setThreads(threads);
+                return parallel;
+            }, MortenBoT::new, games);
+            System.out.printf("%2d thread(s) %8.0f iterations/sec   vs 1 thread %s%n",
+                    threads, iterations / (nanos / 1e9), match);
+        }
+    }
+}
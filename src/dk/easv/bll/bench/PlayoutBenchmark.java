@@ -0,0 +1,88 @@
+package dk.easv.bll.bench;
+
+import dk.easv.bll.bot.search.PlayoutEngine;
+import dk.easv.bll.bot.search.PlayoutPolicy;
+import dk.easv.bll.game.GameSimulator;
+import dk.easv.bll.game.GameState;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures how many playouts per second the PlayoutEngine finishes, from the
+ * empty board and from mid-game positions, for each policy, on one thread
+ * and on all cores. This is the budget Monte Carlo bots work with.
+ */
+public class PlayoutBenchmark {
+
+    private static final long RUN_MS = 2000;
+    private static final int POSITIONS = 50;
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        String[] names = {"RANDOM", "WIN_FIRST"};
+        PlayoutPolicy[] policies = {PlayoutPolicy.RANDOM, PlayoutPolicy.WIN_FIRST};
+        for (int p = 0; p < policies.length; p++) {
+            for (int movesIn : new int[]{0, 20, 40}) {
+                List<GameSimulator> positions = positions(movesIn);
+                run(names[p], movesIn, positions, policies[p], 1);
+                if (threads > 1)
+                    run(names[p], movesIn, positions, policies[p], threads);
+            }
+        }
+    }
+
+    private static void run(String policyName, int movesIn, List<GameSimulator> positions, PlayoutPolicy policy, int threads)
+            throws InterruptedException {
+        AtomicLong playouts = new AtomicLong();
+        AtomicLong moves = new AtomicLong();
+        long start = System.nanoTime();
+        long end = start + RUN_MS * 1_000_000;
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            long seed = t;
+            Thread worker = new Thread(() -> {
+                PlayoutEngine engine = new PlayoutEngine(policy, seed);
+                List<GameSimulator> own = new ArrayList<>();
+                for (GameSimulator position : positions)
+                    own.add(position.copy());
+                long count = 0;
+                long length = 0;
+                while (System.nanoTime() < end) {
+                    engine.playout(own.get((int) (count % own.size())));
+                    length += engine.getLastLength();
+                    count++;
+                }
+                playouts.addAndGet(count);
+                moves.addAndGet(length);
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers)
+            worker.join();
+        double seconds = (System.nanoTime() - start) / 1e9; // The workers finish their last playout after the end
+        System.out.printf("%-10s from move %2d, %2d thread(s) %10.0f playouts/sec %12.0f moves/sec%n",
+                policyName, movesIn, threads, playouts.get() / seconds, moves.get() / seconds);
+    }
+
+    // Random positions movesIn moves into a game that is still going
+    private static List<GameSimulator> positions(int movesIn) {
+        SplittableRandom random = new SplittableRandom(7);
+        List<GameSimulator> positions = new ArrayList<>();
+        int[] cells = new int[81];
+        while (positions.size() < POSITIONS) {
+            GameSimulator simulator = new GameSimulator(new GameState());
+            for (int i = 0; i < movesIn && !simulator.isTerminal(); i++) {
+                int count = simulator.getAvailableMoves(cells);
+                int cell = cells[random.nextInt(count)];
+                simulator.play(cell / 9, cell % 9);
+            }
+            if (!simulator.isTerminal())
+                positions.add(GameSimulator.copyOf(simulator.getCurrentState()));
+        }
+        return positions;
+    }
+}
@@ -0,0 +1,59 @@
+package dk.easv.bll.bench;
+
+import dk.easv.bll.bot.IBot;
+import dk.easv.bll.bot.MortenBoT;
+import dk.easv.bll.bot.RandomBot;
+import dk.easv.bll.game.GameSimulator;
+import dk.easv.bll.game.GameState;
+
+/**
+ * Pondering: MortenBoT plays RandomBot, which stands in for a human who thinks for
+ * a while before every move. Prints the thinking time MortenBoT gained from pondering
+ * per move, and the visits it started its searches with, with and without pondering.
+ * Usage: PonderBenchmark [games] [opponent's think time in ms] [time per move in ms]
+ */
+public class PonderBenchmark {
+
+    public static void main(String[] args) throws InterruptedException {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 2;
+        int thinkTime = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int timePerMove = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        for (boolean ponder : new boolean[]{false, true}) {
+            long gained = 0;
+            long retained = 0;
+            int moves = 0;
+            int hits = 0;
+            for (int game = 0; game < games; game++) {
+                MortenBoT bot = new MortenBoT();
+                IBot opponent = new RandomBot();
+                GameState start = new GameState();
+                start.setTimePerMove(timePerMove);
+                GameSimulator simulator = GameSimulator.copyOf(start);
+                boolean botToMove = game % 2 == 0;
+                boolean first = true; // The first move has nothing to build on
+                while (!simulator.isTerminal()) {
+                    if (botToMove) {
+                        simulator.play(bot.doMove(new GameState(simulator.getCurrentState())));
+                        if (!first) {
+                            gained += bot.getLastPonderMs();
+                            retained += bot.getLastRetainedVisits();
+                            if (bot.getLastPonderMs() > 0)
+                                hits++;
+                            moves++;
+                        }
+                        first = false;
+                        if (ponder)
+                            bot.startPondering(simulator.getCurrentState());
+                    } else {
+                        Thread.sleep(thinkTime);
+                        simulator.play(opponent.doMove(new GameState(simulator.getCurrentState())));
+                    }
+                    botToMove = !botToMove;
+                }
+                bot.stopPondering();
+            }
+            System.out.printf("pondering %-5s %d moves, %.0f ms gained per move (reply pondered on %d), %.0f visits kept per move%n",
+                    ponder, moves, (double) gained / moves, hits, (double) retained / moves);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package dk.easv.bll.bench;
+
+import dk.easv.bll.bot.search.EndgameSolver;
+import dk.easv.bll.game.GameSimulator;
+import dk.easv.bll.game.GameState;
+import dk.easv.bll.game.IGameState;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Test positions for the benchmarks, made by playing random moves from the empty board.
+ */
+public class Positions {
+
+    /**
+     * @param count The number of positions
+     * @param minMoves The least number of moves played
+     * @param maxMoves The most number of moves played
+     * @param seed The same seed gives the same positions
+     * @return Positions that are not over yet, with the hash set
+     */
+    public static List<IGameState> random(int count, int minMoves, int maxMoves, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        List<IGameState> positions = new ArrayList<>();
+        int[] cells = new int[81];
+        while (positions.size() < count) {
+            GameSimulator simulator = new GameSimulator(new GameState());
+            int moves = minMoves + random.nextInt(maxMoves - minMoves + 1);
+            for (int i = 0; i < moves && !simulator.isTerminal(); i++) {
+                int n = simulator.getAvailableMoves(cells);
+                int cell = cells[random.nextInt(n)];
+                simulator.play(cell / 9, cell % 9);
+            }
+            if (!simulator.isTerminal())
+                positions.add(simulator.getCurrentState());
+        }
+        return positions;
+    }
+
+    /**
+     * Late positions, for the endgame benchmarks. Random moves are played until
+     * the number of playable cells (see EndgameSolver.getPlayableCells) is at most maxCells.
+     * @param minCells The least number of playable cells, games that end before are thrown away
+     * @return Positions that are not over yet, with the hash set
+     */
+    public static List<IGameState> endgame(int count, int minCells, int maxCells, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        List<IGameState> positions = new ArrayList<>();
+        int[] cells = new int[81];
+        while (positions.size() < count) {
+            GameSimulator simulator = new GameSimulator(new GameState());
+            while (!simulator.isTerminal()
+                    && EndgameSolver.getPlayableCells(simulator.getCurrentState().getField()) > maxCells) {
+                int n = simulator.getAvailableMoves(cells);
+                int cell = cells[random.nextInt(n)];
+                simulator.play(cell / 9, cell % 9);
+            }
+            if (!simulator.isTerminal()
+                    && EndgameSolver.getPlayableCells(simulator.getCurrentState().getField()) >= minCells)
+                positions.add(simulator.getCurrentState());
+        }
+        return positions;
+    }
+}
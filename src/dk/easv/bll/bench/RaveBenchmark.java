@@ -0,0 +1,53 @@
+package dk.easv.bll.bench;
+
+import dk.easv.bll.bot.MortenBoT;
+import dk.easv.bll.game.GameState;
+import dk.easv.bll.game.IGameState;
+
+import java.util.List;
+
+/**
+ * Tunes the RAVE equivalence k of MortenBoT: iterations/sec, and the score against
+ * MortenBoT without RAVE, both at a fixed number of iterations per move and at the
+ * usual move time. Pass the number of games per row and the iterations per move.
+ */
+public class RaveBenchmark {
+
+    private static final double[] EQUIVALENCES = {10, 100, 1000};
+    private static final int POSITIONS = 20;
+
+    public static void main(String[] args) {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        List<IGameState> positions = Positions.random(POSITIONS, 10, 40, 11);
+        System.out.printf("k = off %7.0f iterations/sec%n", iterationsPerSecond(bot(0, 0), positions));
+        for (double k : EQUIVALENCES) {
+            double speed = iterationsPerSecond(bot(k, 0), positions);
+            BotMatch fixedIterations = BotMatch.play(() -> bot(k, iterations), () -> bot(0, iterations), games);
+            BotMatch fixedTime = BotMatch.play(() -> bot(k, 0), () -> bot(0, 0), games);
+            System.out.printf("k = %4.0f %7.0f iterations/sec   vs off at %d iterations %s   at fixed time %s%n",
+                    k, speed, iterations, fixedIterations, fixedTime);
+        }
+    }
+
+    private static double iterationsPerSecond(MortenBoT bot, List<IGameState> positions) {
+        long iterations = 0;
+        long nanos = 0;
+        for (IGameState position : positions) {
+            long start = System.nanoTime();
+            bot.doMove(new GameState(position));
+            if (bot.getLastIterations() > 0) { // Moves found without searching are left out
+                nanos += System.nanoTime() - start;
+                iterations += bot.getLastIterations();
+            }
+        }
+        return iterations / (nanos / 1e9);
+    }
+
+    private static MortenBoT bot(double equivalence, int iterations) {
+        MortenBoT bot = new MortenBoT();
+        bot.setRaveEquivalence(equivalence);
+        bot.setIterationLimit(iterations);
+        return bot;
+    }
+}
@@ -0,0 +1,53 @@
+package dk.easv.bll.bench;
+
+import dk.easv.bll.bot.MortenBoT;
+import dk.easv.bll.game.GameState;
+import dk.easv.bll.game.IGameState;
+
+import java.util.List;
+
+/**
+ * Compares the two ways MortenBoT can use several threads at the same wall-clock
+ * budget: one shared tree (tree parallel) and one tree per thread merged at the
+ * root (root parallel). Prints iterations/sec for both and the score of root
+ * parallel against tree parallel. Pass the number of games per row as the first argument.
+ */
+public class RootParallelBenchmark {
+
+    private static final int[] THREADS = {2, 4, 8};
+    private static final int POSITIONS = 20;
+
+    public static void main(String[] args) {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        List<IGameState> positions = Positions.random(POSITIONS, 10, 40, 11);
+        System.out.println("Cores: " + Runtime.getRuntime().availableProcessors());
+        for (int threads : THREADS) {
+            double tree = iterationsPerSecond(bot(threads, false), positions);
+            double root = iterationsPerSecond(bot(threads, true), positions);
+            BotMatch match = BotMatch.play(() -> bot(threads, true), () -> bot(threads, false), games);
+            System.out.printf("%d threads  tree %6.0f it/s  root %6.0f it/s  root vs tree %s%n",
+                    threads, tree, root, match);
+        }
+    }
+
+    private static MortenBoT bot(int threads, boolean rootParallel) {
+        MortenBoT bot = new MortenBoT();
+        bot.setThreads(threads);
+        bot.setRootParallel(rootParallel);
+        return bot;
+    }
+
+    private static double iterationsPerSecond(MortenBoT bot, List<IGameState> positions) {
+        long iterations = 0;
+        long nanos = 0;
+        for (IGameState position : positions) {
+            long start = System.nanoTime();
+            bot.doMove(new GameState(position));
+            if (bot.getLastIterations() > 0) { // Moves found without searching are left out
+                nanos += System.nanoTime() - start;
+                iterations += bot.getLastIterations();
+            }
+        }
+        return iterations / (nanos / 1e9);
+    }
+}
@@ -0,0 +1,153 @@
+package dk.easv.bll.bench;
+
+import dk.easv.bll.field.BitboardField;
+import dk.easv.bll.field.Cell;
+import dk.easv.bll.field.IField;
+import dk.easv.bll.game.GameManager;
+import dk.easv.bll.game.GameSimulator;
+import dk.easv.bll.game.GameState;
+import dk.easv.bll.game.Zobrist;
+import dk.easv.bll.move.IMove;
+import dk.easv.bll.move.Move;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Plays random games with the original String rules (see StringRules) and with the
+ * current engine side by side, and counts every place they disagree:
+ * - legality of every cell, and the available moves in order,
+ * - the board, the macroboard (which includes the active microboards), win and tie,
+ * - the hash kept move by move against Zobrist.hash from scratch,
+ * - makeMove/unmakeMove round trips, and taking a whole game back to the empty board.
+ * The engine is played both as a GameSimulator on a BitboardField and through a
+ * GameManager on the default Field, whose String views are compared too.
+ * Usage: RulesCheck [games]
+ */
+public class RulesCheck {
+
+    private static final String[] CHECKS = {"legality", "moves", "board", "macroboard", "game over", "hash", "round trip"};
+
+    private final long[] mismatches = new long[CHECKS.length];
+    private final int[] cells = new int[81];
+
+    public static void main(String[] args) {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        RulesCheck check = new RulesCheck();
+        SplittableRandom random = new SplittableRandom(41);
+        long moves = 0;
+        for (int game = 0; game < games; game++)
+            moves += check.playGame(random);
+        long total = 0;
+        for (int i = 0; i < CHECKS.length; i++) {
+            System.out.printf("%-11s %d mismatches%n", CHECKS[i], check.mismatches[i]);
+            total += check.mismatches[i];
+        }
+        System.out.printf("%d games, %d moves, %d mismatches%n", games, moves, total);
+    }
+
+    private int playGame(SplittableRandom random) {
+        StringRules reference = new StringRules();
+        GameSimulator simulator = new GameSimulator(new GameState(new BitboardField()));
+        GameManager manager = new GameManager(new GameState());
+        List<String> before = new ArrayList<>(); // The simulator before every move, to check taking them back
+        int moves = 0;
+        while (reference.getGameOver() == GameManager.GameOverState.Active && !reference.getAvailableMoves().isEmpty()) {
+            compare(reference, simulator, manager);
+            List<IMove> available = reference.getAvailableMoves();
+            IMove move = available.get(random.nextInt(available.size()));
+
+            // Now and then a move is made and taken back first, which must leave no trace
+            if (random.nextInt(4) == 0) {
+                String snapshot = snapshot(simulator);
+                simulator.makeMove(move.getX(), move.getY());
+                simulator.unmakeMove();
+                manager.makeMove(move);
+                manager.unmakeMove();
+                count(6, !snapshot.equals(snapshot(simulator)) || !snapshot.equals(snapshot(manager.getCurrentState().getField(),
+                        manager.getCurrentState().getHash(), manager.getCurrentState().getMoveNumber(), manager.getGameOver())));
+                compare(reference, simulator, manager);
+            }
+
+            before.add(snapshot(simulator));
+            reference.play(move);
+            simulator.makeMove(move.getX(), move.getY());
+            manager.updateGame(move);
+            moves++;
+        }
+        compare(reference, simulator, manager);
+
+        // Back to the empty board, one move at a time
+        for (int i = before.size() - 1; i >= 0; i--) {
+            simulator.unmakeMove();
+            count(6, !before.get(i).equals(snapshot(simulator)));
+        }
+        count(6, simulator.unmakeMove() || simulator.getHash() != 0);
+        return moves;
+    }
+
+    private void compare(StringRules reference, GameSimulator simulator, GameManager manager) {
+        IField field = simulator.getCurrentState().getField();
+        IField managerField = manager.getCurrentState().getField();
+
+        boolean legality = false;
+        for (int x = 0; x < 9; x++)
+            for (int y = 0; y < 9; y++)
+                legality |= simulator.isLegal(x, y) != reference.isLegal(new Move(x, y));
+        legality |= simulator.isLegal(-1, 0) || simulator.isLegal(0, 9);
+        count(0, legality);
+
+        List<IMove> expected = reference.getAvailableMoves();
+        int count = simulator.getAvailableMoves(cells);
+        boolean moves = count != expected.size() || !expected.equals(field.getAvailableMoves())
+                || !expected.equals(managerField.getAvailableMoves());
+        for (int i = 0; i < count && !moves; i++)
+            moves = cells[i] != expected.get(i).getX() * 9 + expected.get(i).getY();
+        count(1, moves);
+
+        boolean board = false;
+        String[][] view = managerField.getBoard();
+        for (int x = 0; x < 9; x++)
+            for (int y = 0; y < 9; y++)
+                board |= !reference.getBoard()[x][y].equals(Cell.toString(field.getCell(x, y)))
+                        || !reference.getBoard()[x][y].equals(view[x][y]);
+        count(2, board);
+
+        boolean macroboard = false;
+        String[][] macroView = managerField.getMacroboard();
+        for (int x = 0; x < 3; x++)
+            for (int y = 0; y < 3; y++)
+                macroboard |= !reference.getMacroboard()[x][y].equals(Cell.toString(field.getMacroCell(x, y)))
+                        || !reference.getMacroboard()[x][y].equals(macroView[x][y]);
+        count(3, macroboard);
+
+        count(4, reference.getGameOver() != simulator.getGameOver() || reference.getGameOver() != manager.getGameOver()
+                || reference.getCurrentPlayer() != simulator.getCurrentPlayer()
+                || reference.getMoveNumber() != simulator.getCurrentState().getMoveNumber());
+
+        count(5, simulator.getHash() != Zobrist.hash(simulator.getCurrentState())
+                || manager.getCurrentState().getHash() != simulator.getHash());
+    }
+
+    private void count(int check, boolean mismatch) {
+        if (mismatch)
+            mismatches[check]++;
+    }
+
+    private static String snapshot(GameSimulator simulator) {
+        return snapshot(simulator.getCurrentState().getField(), simulator.getHash(),
+                simulator.getCurrentState().getMoveNumber(), simulator.getGameOver());
+    }
+
+    private static String snapshot(IField field, long hash, int moveNumber, GameManager.GameOverState gameOver) {
+        int[] stones = new int[18];
+        for (int micro = 0; micro < 9; micro++) {
+            stones[micro] = field.getStones(0, micro);
+            stones[9 + micro] = field.getStones(1, micro);
+        }
+        return Arrays.toString(stones) + field.getWonMask(0) + "," + field.getWonMask(1) + "," + field.getTiedMask()
+                + "," + field.getActiveMask() + "," + hash + "," + moveNumber + "," + gameOver;
+    }
+}
@@ -0,0 +1,183 @@
+package dk.easv.bll.bench;
+
+import dk.easv.bll.field.IField;
+import dk.easv.bll.game.GameManager.GameOverState;
+import dk.easv.bll.move.IMove;
+import dk.easv.bll.move.Move;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The rules as the original GameManager played them on the original String Field,
+ * copied here so the benchmarks and RulesCheck have something to measure and
+ * compare the current rules engine against. Nothing else should use it.
+ */
+public class StringRules {
+
+    private final String[][] board = new String[9][9];
+    private final String[][] macroBoard = new String[3][3];
+    private int currentPlayer = 0;
+    private int moveNumber = 0;
+    private GameOverState gameOver = GameOverState.Active;
+
+    public StringRules() {
+        for (int i = 0; i < board.length; i++)
+            for (int k = 0; k < board[i].length; k++)
+                board[i][k] = IField.EMPTY_FIELD;
+        for (int i = 0; i < macroBoard.length; i++)
+            for (int k = 0; k < macroBoard[i].length; k++)
+                macroBoard[i][k] = IField.AVAILABLE_FIELD;
+    }
+
+    public String[][] getBoard() {
+        return board;
+    }
+
+    public String[][] getMacroboard() {
+        return macroBoard;
+    }
+
+    public int getCurrentPlayer() {
+        return currentPlayer;
+    }
+
+    public int getMoveNumber() {
+        return moveNumber;
+    }
+
+    public GameOverState getGameOver() {
+        return gameOver;
+    }
+
+    // Field.getAvailableMoves()
+    public List<IMove> getAvailableMoves() {
+        List<IMove> availMoves = new ArrayList<>();
+        for (int i = 0; i < board.length; i++)
+            for (int k = 0; k < board[i].length; k++) {
+                if (isInActiveMicroboard(i, k) && board[i][k].equals(IField.EMPTY_FIELD))
+                    availMoves.add(new Move(i, k));
+            }
+        return availMoves;
+    }
+
+    // Field.isInActiveMicroboard
+    public boolean isInActiveMicroboard(int x, int y) {
+        int xTrans = x > 0 ? x / 3 : 0;
+        int yTrans = y > 0 ? y / 3 : 0;
+        return macroBoard[xTrans][yTrans].equals(IField.AVAILABLE_FIELD);
+    }
+
+    // GameManager.verifyMoveLegality
+    public boolean isLegal(IMove move) {
+        boolean isValid = isInActiveMicroboard(move.getX(), move.getY());
+        if (isValid && (move.getX() < 0 || 9 <= move.getX())) isValid = false;
+        if (isValid && (move.getY() < 0 || 9 <= move.getY())) isValid = false;
+        if (isValid && !board[move.getX()][move.getY()].equals(IField.EMPTY_FIELD))
+            isValid = false;
+        return isValid;
+    }
+
+    // GameManager.updateGame(IMove)
+    public boolean play(IMove move) {
+        if (!isLegal(move))
+            return false;
+        board[move.getX()][move.getY()] = currentPlayer + "";
+        moveNumber++;
+        checkAndUpdateIfWin(move);
+        updateMacroboard(move);
+        currentPlayer = (currentPlayer + 1) % 2;
+        return true;
+    }
+
+    private void checkAndUpdateIfWin(IMove move) {
+        int macroX = move.getX() / 3;
+        int macroY = move.getY() / 3;
+        if (macroBoard[macroX][macroY].equals(IField.EMPTY_FIELD) ||
+                macroBoard[macroX][macroY].equals(IField.AVAILABLE_FIELD)) {
+            if (isWin(board, move, "" + currentPlayer))
+                macroBoard[macroX][macroY] = currentPlayer + "";
+            else if (isTie(board, move))
+                macroBoard[macroX][macroY] = "TIE";
+
+            //Check macro win
+            if (isWin(macroBoard, new Move(macroX, macroY), "" + currentPlayer))
+                gameOver = GameOverState.Win;
+            else if (isTie(macroBoard, new Move(macroX, macroY)))
+                gameOver = GameOverState.Tie;
+        }
+    }
+
+    private boolean isTie(String[][] board, IMove move) {
+        int startX = move.getX() - move.getX() % 3;
+        int startY = move.getY() - move.getY() % 3;
+        for (int i = startX; i < startX + 3; i++)
+            for (int k = startY; k < startY + 3; k++)
+                if (board[i][k].equals(IField.AVAILABLE_FIELD) || board[i][k].equals(IField.EMPTY_FIELD))
+                    return false;
+        return true;
+    }
+
+    // GameManager.isWin, as it was before RulesTable
+    private static boolean isWin(String[][] board, IMove move, String currentPlayer) {
+        int localX = move.getX() % 3;
+        int localY = move.getY() % 3;
+        int startX = move.getX() - (localX);
+        int startY = move.getY() - (localY);
+
+        //check col
+        for (int i = startY; i < startY + 3; i++) {
+            if (!board[move.getX()][i].equals(currentPlayer))
+                break;
+            if (i == startY + 3 - 1) return true;
+        }
+
+        //check row
+        for (int i = startX; i < startX + 3; i++) {
+            if (!board[i][move.getY()].equals(currentPlayer))
+                break;
+            if (i == startX + 3 - 1) return true;
+        }
+
+        //check diagonal
+        if (localX == localY) {
+            //we're on a diagonal
+            int y = startY;
+            for (int i = startX; i < startX + 3; i++) {
+                if (!board[i][y++].equals(currentPlayer))
+                    break;
+                if (i == startX + 3 - 1) return true;
+            }
+        }
+
+        //check anti diagonal
+        if (localX + localY == 3 - 1) {
+            int less = 0;
+            for (int i = startX; i < startX + 3; i++) {
+                if (!board[i][(startY + 2) - less++].equals(currentPlayer))
+                    break;
+                if (i == startX + 3 - 1) return true;
+            }
+        }
+        return false;
+    }
+
+    private void updateMacroboard(IMove move) {
+        for (int i = 0; i < macroBoard.length; i++)
+            for (int k = 0; k < macroBoard[i].length; k++)
+                if (macroBoard[i][k].equals(IField.AVAILABLE_FIELD))
+                    macroBoard[i][k] = IField.EMPTY_FIELD;
+
+        int xTrans = move.getX() % 3;
+        int yTrans = move.getY() % 3;
+        if (macroBoard[xTrans][yTrans].equals(IField.EMPTY_FIELD))
+            macroBoard[xTrans][yTrans] = IField.AVAILABLE_FIELD;
+        else {
+            // Field is already won, set all fields not won to avail.
+            for (int i = 0; i < macroBoard.length; i++)
+                for (int k = 0; k < macroBoard[i].length; k++)
+                    if (macroBoard[i][k].equals(IField.EMPTY_FIELD))
+                        macroBoard[i][k] = IField.AVAILABLE_FIELD;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package dk.easv.bll.bench;
+
+import dk.easv.bll.bot.BotTest;
+import dk.easv.bll.bot.FillerNameBot;
+import dk.easv.bll.bot.IBot;
+import dk.easv.bll.bot.MortenBoT;
+import dk.easv.bll.game.IGameState;
+import dk.easv.bll.move.IMove;
+
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Subtree reuse: for MortenBoT, BotTest and FillerNameBot, plays the bot with
+ * reuse against itself without, at the same time (or simulations) per move,
+ * and prints the average visits kept from the previous search per move.
+ * Pass the number of games per bot as the first argument.
+ */
+public class SubtreeReuseBenchmark {
+
+    public static void main(String[] args) {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        run("MortenBoT", games, reuse -> {
+            MortenBoT bot = new MortenBoT();
+            bot.setReuseTree(reuse);
+            return bot;
+        }, MortenBoT::getLastRetainedVisits);
+        run("BotTest", games, reuse -> {
+            BotTest bot = new BotTest();
+            bot.setReuseTree(reuse);
+            return bot;
+        }, BotTest::getLastRetainedVisits);
+        run("FillerNameBot", games, reuse -> {
+            FillerNameBot bot = new FillerNameBot();
+            bot.setReuseTree(reuse);
+            return bot;
+        }, FillerNameBot::getLastRetainedVisits);
+    }
+
+    private interface Factory<B extends IBot> {
+        B create(boolean reuse);
+    }
+
+    private static <B extends IBot> void run(String name, int games, Factory<B> factory, ToDoubleFunction<B> retained) {
+        double[] totals = new double[2]; // Retained visits, moves
+        Supplier<IBot> withReuse = () -> {
+            B bot = factory.create(true);
+            return new IBot() {
+                @Override
+                public IMove doMove(IGameState state) {
+                    IMove move = bot.doMove(state);
+                    totals[0] += retained.applyAsDouble(bot);
+                    totals[1]++;
+                    return move;
+                }
+
+                @Override
+                public String getBotName() {
+                    return bot.getBotName();
+                }
+            };
+        };
+        BotMatch match = BotMatch.play(withReuse, () -> factory.create(false), games);
+        System.out.printf("%-14s %8.1f retained visits/move   reuse vs no reuse %s%n",
+                name, totals[0] / totals[1], match);
+    }
+}
@@ -0,0 +1,93 @@
+package dk.easv.bll.bench;
+
+import dk.easv.bll.bot.MortenBoT;
+import dk.easv.bll.field.BitboardField;
+import dk.easv.bll.game.GameManager;
+import dk.easv.bll.game.GameState;
+import dk.easv.bll.game.IGameState;
+import dk.easv.bll.game.Symmetry;
+import dk.easv.bll.move.IMove;
+import dk.easv.bll.move.Move;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Counts distinct positions with and without folding the 8 board symmetries,
+ * for the full opening tree and for the nodes MortenBoT creates while searching.
+ */
+public class SymmetryBenchmark {
+
+    public static void main(String[] args) {
+        for (int depth = 1; depth <= 3; depth++) {
+            Set<Long> raw = new HashSet<>();
+            Set<Long> canonical = new HashSet<>();
+            GameManager game = new GameManager(new GameState(new BitboardField()));
+            walk(game, depth, raw, canonical);
+            print("opening depth " + depth, raw.size(), canonical.size());
+        }
+
+        Random rnd = new Random(3);
+        int raw = 0;
+        int canonical = 0;
+        for (int i = 0; i < 20; i++) {
+            GameManager game = new GameManager(new GameState());
+            int moves = 1 + rnd.nextInt(8);
+            for (int k = 0; k < moves; k++) {
+                List<IMove> avail = game.getCurrentState().getField().getAvailableMoves();
+                game.updateGame(avail.get(rnd.nextInt(avail.size())));
+            }
+            int[] counts = countSearchNodes(game.getCurrentState());
+            raw += counts[0];
+            canonical += counts[1];
+        }
+        print("MortenBoT random", raw, canonical);
+
+        GameManager center = new GameManager(new GameState());
+        center.updateGame(new Move(4, 4));
+        int[] counts = countSearchNodes(center.getCurrentState());
+        print("MortenBoT center", counts[0], counts[1]);
+
+        IGameState state = center.getCurrentState();
+        long start = System.nanoTime();
+        long sink = 0;
+        for (int i = 0; i < 200_000; i++)
+            sink ^= Symmetry.canonicalHash(state);
+        System.out.printf("canonicalHash: %.0f ns/call (%d)%n", (System.nanoTime() - start) / 200_000.0, sink & 1);
+    }
+
+    // Returns the number of distinct positions and distinct canonical positions in one MortenBoT search
+    private static int[] countSearchNodes(IGameState position) {
+        Set<Long> raw = new HashSet<>();
+        Set<Long> canonical = new HashSet<>();
+        MortenBoT bot = new MortenBoT();
+        bot.setNodeListener(state -> {
+            raw.add(state.getHash());
+            canonical.add(Symmetry.canonicalHash(state));
+        });
+        bot.doMove(new GameState(position));
+        return new int[]{raw.size(), canonical.size()};
+    }
+
+    private static void walk(GameManager game, int depth, Set<Long> raw, Set<Long> canonical) {
+        if (depth == 0) {
+            raw.add(game.getCurrentState().getHash());
+            canonical.add(Symmetry.canonicalHash(game.getCurrentState()));
+            return;
+        }
+        int[] cells = new int[81];
+        int count = game.getCurrentState().getField().getAvailableMoves(cells);
+        for (int i = 0; i < count; i++) {
+            game.makeMove(new Move(cells[i] / 9, cells[i] % 9));
+            walk(game, depth - 1, raw, canonical);
+            game.unmakeMove();
+        }
+    }
+
+    private static void print(String name, int raw, int canonical) {
+        System.out.printf("%-16s %8d positions %8d canonical (%.1f%% fewer)%n",
+                name, raw, canonical, 100.0 * (raw - canonical) / raw);
+    }
+}
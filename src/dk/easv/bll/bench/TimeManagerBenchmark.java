@@ -0,0 +1,52 @@
+package dk.easv.bll.bench;
+
+import dk.easv.bll.bot.AlphaBetaBot;
+import dk.easv.bll.bot.ExampleSneakyBot;
+import dk.easv.bll.bot.FillerNameBot;
+import dk.easv.bll.bot.IBot;
+import dk.easv.bll.bot.MortenBoT;
+import dk.easv.bll.game.GameState;
+import dk.easv.bll.game.IGameState;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * How long the bots think on a set of positions, against the time they are given:
+ * the average and longest move, and the moves that went over getTimePerMove().
+ * Usage: TimeManagerBenchmark [time per move in ms]
+ */
+public class TimeManagerBenchmark {
+
+    private static final int POSITIONS = 20;
+
+    public static void main(String[] args) {
+        int timePerMove = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        List<IGameState> positions = Positions.random(POSITIONS, 0, 50, 23);
+        measure("MortenBoT", MortenBoT::new, positions, timePerMove);
+        measure("AlphaBetaBot", AlphaBetaBot::new, positions, timePerMove);
+        measure("FillerNameBot", FillerNameBot::new, positions, timePerMove);
+        measure("ExampleSneakyBot", ExampleSneakyBot::new, positions, timePerMove);
+    }
+
+    private static void measure(String name, Supplier<IBot> bots, List<IGameState> positions, int timePerMove) {
+        IBot bot = bots.get();
+        double total = 0;
+        double longest = 0;
+        int overruns = 0;
+        for (IGameState position : positions) {
+            GameState state = new GameState(position);
+            state.setTimePerMove(timePerMove);
+            long start = System.nanoTime();
+            bot.doMove(state);
+            double ms = (System.nanoTime() - start) / 1e6;
+            total += ms;
+            longest = Math.max(longest, ms);
+            if (ms > timePerMove)
+                overruns++;
+        }
+        System.out.printf("%-16s average %6.0f ms (%3.0f%% of the time), longest %6.0f ms, %d/%d over%n",
+                name, total / positions.size(), 100 * total / positions.size() / timePerMove, longest,
+                overruns, positions.size());
+    }
+}
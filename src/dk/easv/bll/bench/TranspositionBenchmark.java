@@ -0,0 +1,65 @@
+package dk.easv.bll.bench;
+
+import dk.easv.bll.bot.MortenBoT;
+import dk.easv.bll.bot.search.TranspositionTable;
+import dk.easv.bll.game.GameManager;
+import dk.easv.bll.game.GameState;
+import dk.easv.bll.game.IGameState;
+import dk.easv.bll.move.IMove;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Lets MortenBoT think about the same random positions with and without its
+ * transposition tables, and prints the table hit rates and MCTS iterations per second.
+ */
+public class TranspositionBenchmark {
+
+    private static final int POSITIONS = 30;
+
+    public static void main(String[] args) {
+        List<IGameState> positions = randomPositions(POSITIONS, new Random(7));
+        run("without table", positions, false);
+        run("with table", positions, true);
+    }
+
+    private static void run(String name, List<IGameState> positions, boolean useTable) {
+        MortenBoT bot = new MortenBoT();
+        bot.setUseTranspositions(useTable);
+        long iterations = 0;
+        long start = System.nanoTime();
+        for (IGameState position : positions) {
+            bot.doMove(new GameState(position));
+            iterations += bot.getLastIterations();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%-14s %8.1f iterations/sec %8.0f ms/move%n",
+                name, iterations / seconds, seconds * 1000 / positions.size());
+        if (useTable) {
+            print("statistics", bot.getStatisticsTable());
+            print("evaluations", bot.getEvaluationTable());
+        }
+    }
+
+    private static void print(String name, TranspositionTable table) {
+        System.out.printf("  %-12s %9d probes %6.1f%% hits%n", name, table.getProbes(), table.getHitRate() * 100);
+    }
+
+    static List<IGameState> randomPositions(int count, Random rnd) {
+        List<IGameState> positions = new ArrayList<>();
+        while (positions.size() < count) {
+            GameManager game = new GameManager(new GameState());
+            int moves = 6 + rnd.nextInt(30);
+            for (int i = 0; i < moves && game.getGameOver() == GameManager.GameOverState.Active; i++) {
+                List<IMove> avail = game.getCurrentState().getField().getAvailableMoves();
+                game.updateGame(avail.get(rnd.nextInt(avail.size())));
+            }
+            if (game.getGameOver() == GameManager.GameOverState.Active
+                    && !game.getCurrentState().getField().getAvailableMoves().isEmpty())
+                positions.add(new GameState(game.getCurrentState()));
+        }
+        return positions;
+    }
+}
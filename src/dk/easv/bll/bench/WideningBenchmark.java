@@ -0,0 +1,58 @@
+package dk.easv.bll.bench;
+
+import dk.easv.bll.bot.MortenBoT;
+import dk.easv.bll.game.GameState;
+import dk.easv.bll.game.IGameState;
+
+import java.util.List;
+
+/**
+ * Progressive widening of MortenBoT against expanding the best 5 moves only:
+ * iterations/sec, and the score against the fixed 5, both at a fixed number of
+ * iterations per move and at the usual move time, for a few settings of k and alpha.
+ * Pass the number of games per row and the iterations per move.
+ */
+public class WideningBenchmark {
+
+    // {k, alpha}
+    private static final double[][] SETTINGS = {{1, 0.5}, {2, 0.4}, {2, 0.25}, {4, 0.25}};
+    private static final int POSITIONS = 20;
+
+    public static void main(String[] args) {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        List<IGameState> positions = Positions.random(POSITIONS, 10, 40, 11);
+        iterationsPerSecond(bot(0, 0, 0), positions); // Warms up
+        System.out.printf("fixed 5          %7.0f iterations/sec%n", iterationsPerSecond(bot(0, 0, 0), positions));
+        for (double[] setting : SETTINGS) {
+            double k = setting[0];
+            double alpha = setting[1];
+            double speed = iterationsPerSecond(bot(k, alpha, 0), positions);
+            BotMatch fixedIterations = BotMatch.play(() -> bot(k, alpha, iterations), () -> bot(0, 0, iterations), games);
+            BotMatch fixedTime = BotMatch.play(() -> bot(k, alpha, 0), () -> bot(0, 0, 0), games);
+            System.out.printf("k = %.0f alpha = %.2f %7.0f iterations/sec   vs fixed 5 at %d iterations %s   at fixed time %s%n",
+                    k, alpha, speed, iterations, fixedIterations, fixedTime);
+        }
+    }
+
+    private static double iterationsPerSecond(MortenBoT bot, List<IGameState> positions) {
+        long iterations = 0;
+        long nanos = 0;
+        for (IGameState position : positions) {
+            long start = System.nanoTime();
+            bot.doMove(new GameState(position));
+            if (bot.getLastIterations() > 0) { // Moves found without searching are left out
+                nanos += System.nanoTime() - start;
+                iterations += bot.getLastIterations();
+            }
+        }
+        return iterations / (nanos / 1e9);
+    }
+
+    private static MortenBoT bot(double factor, double exponent, int iterations) {
+        MortenBoT bot = new MortenBoT();
+        bot.setWidening(factor, exponent);
+        bot.setIterationLimit(iterations);
+        return bot;
+    }
+}
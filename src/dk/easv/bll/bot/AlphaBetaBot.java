@@ -0,0 +1,295 @@
+package dk.easv.bll.bot;
+
+import dk.easv.bll.bot.search.TimeManager;
+import dk.easv.bll.bot.search.TranspositionTable;
+import dk.easv.bll.field.IField;
+import dk.easv.bll.game.GameManager.GameOverState;
+import dk.easv.bll.game.GameSimulator;
+import dk.easv.bll.game.IGameState;
+import dk.easv.bll.game.RulesTable;
+import dk.easv.bll.move.IMove;
+
+/**
+ * Negamax alpha-beta search with iterative deepening and principal variation search.
+ *
+ * The search walks the tree with makeMove/unmakeMove on a single GameSimulator,
+ * so no states are copied. Moves are ordered by the transposition table move,
+ * two killer moves per ply, moves that win a microboard and the history heuristic.
+ * Each move gets getTimePerMove() of the state through a TimeManager: at its hard deadline
+ * the running iteration is dropped, and the move from the deepest finished iteration is
+ * played. No new iteration is started once the best move is stable past the soft deadline.
+ * getLastDepth and getLastNodesPerSecond tell how far the latest search got.
+ */
+public class AlphaBetaBot implements IBot {
+    private String BOT_NAME = getClass().getSimpleName();
+
+    private static final int MAX_PLY = 82;
+    private static final int WIN = 1_000_000; // A win at ply p scores WIN - p, so quicker wins score higher
+    private static final int INFINITY = WIN + 1;
+    // History scores stay below the microboard win bonus in the move ordering
+    private static final int MAX_HISTORY = (1 << 27) - 1;
+
+    // Evaluation weights. Microboards count more in the center and the corners, as on a plain board
+    private static final int[] SQUARE_WEIGHTS = {3, 2, 3, 2, 4, 2, 3, 2, 3};
+    private static final int MICRO_WIN = 100;
+    private static final int MACRO_THREAT = 150;
+    private static final int LOCAL_THREAT = 8;
+    private static final int LOCAL_STONE = 1;
+
+    // Kept by each AlphaBetaBot, as its scores are only as good as its own search. Keyed by Zobrist hash
+    private final TranspositionTable table = new TranspositionTable(1 << 18);
+
+    private GameSimulator simulator;
+    private final int[][] moves = new int[MAX_PLY][81];
+    private final int[][] scores = new int[MAX_PLY][81];
+    private final int[][] killers = new int[MAX_PLY][2];
+    private final int[][] history = new int[2][81];
+    private final TimeManager time = new TimeManager();
+    private boolean aborted;
+    private long nodes;
+    private int rootMove;
+
+    private int lastDepth = 0;
+    private long lastNodes = 0;
+    private long lastNanos = 0;
+    private int lastScore = 0;
+
+    @Override
+    public IMove doMove(IGameState state) {
+        simulator = GameSimulator.copyOf(state);
+        int count = simulator.getAvailableMoves(moves[0]);
+        time.start(state, count);
+        long start = time.getStartTime();
+        long budget = time.getHardDeadline() - start;
+        nodes = 0;
+        aborted = false;
+        lastDepth = 0;
+        lastScore = 0;
+        table.newSearch();
+        for (int[] killer : killers) {
+            killer[0] = TranspositionTable.NO_MOVE;
+            killer[1] = TranspositionTable.NO_MOVE;
+        }
+        for (int[] playerHistory : history)
+            for (int cell = 0; cell < 81; cell++)
+                playerHistory[cell] /= 2;
+
+        int bestMove = moves[0][0];
+        if (count > 1) {
+            int emptyCells = 81 - state.getMoveNumber();
+            for (int depth = 1; depth <= emptyCells; depth++) {
+                rootMove = TranspositionTable.NO_MOVE;
+                int score = search(depth, -INFINITY, INFINITY, 0);
+                if (aborted)
+                    break;
+                if (rootMove != TranspositionTable.NO_MOVE)
+                    bestMove = rootMove;
+                time.setBestMove(bestMove);
+                lastDepth = depth;
+                lastScore = score;
+                // A proven result will not change, and an iteration that started late would not finish
+                if (Math.abs(score) > WIN - MAX_PLY || time.isSoftTimeUp() || System.nanoTime() - start > budget / 2)
+                    break;
+            }
+        }
+        lastNodes = nodes;
+        lastNanos = System.nanoTime() - start;
+        simulator = null;
+        return GameSimulator.toMove(bestMove);
+    }
+
+    private int search(int depth, int alpha, int beta, int ply) {
+        nodes++;
+        if (time.isHardTimeUp())
+            aborted = true;
+        if (aborted)
+            return 0;
+        if (simulator.getGameOver() == GameOverState.Win)
+            return -(WIN - ply); // The player who just moved won
+        if (simulator.isTerminal())
+            return 0;
+        if (depth == 0)
+            return evaluate(simulator.getCurrentState().getField(), simulator.getCurrentPlayer());
+
+        long hash = simulator.getHash();
+        int tableMove = TranspositionTable.NO_MOVE;
+        long entry = table.probe(hash);
+        if (entry != TranspositionTable.MISS) {
+            tableMove = TranspositionTable.searchMove(entry);
+            if (ply > 0 && TranspositionTable.searchDepth(entry) >= depth) {
+                int value = fromTable(TranspositionTable.searchValue(entry), ply);
+                int bound = TranspositionTable.searchBound(entry);
+                if (bound == TranspositionTable.EXACT
+                        || (bound == TranspositionTable.LOWER && value >= beta)
+                        || (bound == TranspositionTable.UPPER && value <= alpha))
+                    return value;
+            }
+        }
+
+        int[] plyMoves = moves[ply];
+        int[] plyScores = scores[ply];
+        int count = simulator.getAvailableMoves(plyMoves);
+        orderMoves(plyMoves, plyScores, count, tableMove, ply);
+
+        int player = simulator.getCurrentPlayer();
+        int alphaStart = alpha;
+        int best = -INFINITY;
+        int bestMove = TranspositionTable.NO_MOVE;
+        for (int i = 0; i < count; i++) {
+            pickNext(plyMoves, plyScores, i, count);
+            int cell = plyMoves[i];
+            simulator.makeMove(cell / 9, cell % 9);
+            int value;
+            if (i == 0) {
+                value = -search(depth - 1, -beta, -alpha, ply + 1);
+            }
+            else { // Prove the move is worse than the best so far with a null window, search it fully if not
+                value = -search(depth - 1, -alpha - 1, -alpha, ply + 1);
+                if (value > alpha && value < beta)
+                    value = -search(depth - 1, -beta, -alpha, ply + 1);
+            }
+            simulator.unmakeMove();
+            if (aborted)
+                return 0;
+
+            if (value > best) {
+                best = value;
+                bestMove = cell;
+            }
+            if (value > alpha)
+                alpha = value;
+            if (alpha >= beta) {
+                if (cell != killers[ply][0]) {
+                    killers[ply][1] = killers[ply][0];
+                    killers[ply][0] = cell;
+                }
+                history[player][cell] = Math.min(history[player][cell] + depth * depth, MAX_HISTORY);
+                break;
+            }
+        }
+
+        if (ply == 0)
+            rootMove = bestMove;
+        int bound = best <= alphaStart ? TranspositionTable.UPPER
+                : best >= beta ? TranspositionTable.LOWER : TranspositionTable.EXACT;
+        table.store(hash, TranspositionTable.packSearch(toTable(best, ply), bound, bestMove, depth), depth);
+        return best;
+    }
+
+    /**
+     * Scores the moves for ordering: the table move first, then the killers,
+     * then moves that win a microboard, then the rest by history.
+     */
+    private void orderMoves(int[] cells, int[] moveScores, int count, int tableMove, int ply) {
+        IField field = simulator.getCurrentState().getField();
+        int player = simulator.getCurrentPlayer();
+        int decided = field.getWonMask(0) | field.getWonMask(1) | field.getTiedMask();
+        for (int i = 0; i < count; i++) {
+            int cell = cells[i];
+            int score;
+            if (cell == tableMove) {
+                score = 1 << 30;
+            }
+            else if (cell == killers[ply][0]) {
+                score = 1 << 29;
+            }
+            else if (cell == killers[ply][1]) {
+                score = 1 << 28;
+            }
+            else {
+                int x = cell / 9;
+                int y = cell % 9;
+                int micro = (x / 3) * 3 + y / 3;
+                boolean winsMicro = (decided & (1 << micro)) == 0
+                        && (RulesTable.threats(field.getStones(player, micro)) & RulesTable.cellBit(x, y)) != 0;
+                score = (winsMicro ? 1 << 27 : 0) + history[player][cell];
+            }
+            moveScores[i] = score;
+        }
+    }
+
+    // One step of a selection sort, so moves after a cutoff are never sorted
+    private static void pickNext(int[] cells, int[] moveScores, int from, int count) {
+        int best = from;
+        for (int i = from + 1; i < count; i++)
+            if (moveScores[i] > moveScores[best])
+                best = i;
+        if (best != from) {
+            int cell = cells[from];
+            cells[from] = cells[best];
+            cells[best] = cell;
+            int score = moveScores[from];
+            moveScores[from] = moveScores[best];
+            moveScores[best] = score;
+        }
+    }
+
+    /**
+     * @return The score of the position for the player to move
+     */
+    private static int evaluate(IField field, int player) {
+        return evaluateSide(field, player) - evaluateSide(field, 1 - player);
+    }
+
+    private static int evaluateSide(IField field, int player) {
+        int won = field.getWonMask(player);
+        int decided = won | field.getWonMask(1 - player) | field.getTiedMask();
+        int score = MACRO_THREAT * Integer.bitCount(RulesTable.threats(won) & ~decided & RulesTable.FULL_MASK);
+        for (int micro = 0; micro < 9; micro++) {
+            int microBit = 1 << micro;
+            if ((won & microBit) != 0) {
+                score += MICRO_WIN * SQUARE_WEIGHTS[micro];
+            }
+            else if ((decided & microBit) == 0) {
+                int stones = field.getStones(player, micro);
+                int empty = ~field.getOccupied(micro) & RulesTable.FULL_MASK;
+                score += (LOCAL_THREAT * Integer.bitCount(RulesTable.threats(stones) & empty)
+                        + LOCAL_STONE * Integer.bitCount(stones)) * SQUARE_WEIGHTS[micro];
+            }
+        }
+        return score;
+    }
+
+    // Wins are stored relative to the position, so they stay right when it is reached at another ply
+    private static int toTable(int value, int ply) {
+        if (value > WIN - MAX_PLY) return value + ply;
+        if (value < -WIN + MAX_PLY) return value - ply;
+        return value;
+    }
+
+    private static int fromTable(int value, int ply) {
+        if (value > WIN - MAX_PLY) return value - ply;
+        if (value < -WIN + MAX_PLY) return value + ply;
+        return value;
+    }
+
+    /**
+     * @return The deepest iteration the latest search finished, 0 if it did not search
+     */
+    public int getLastDepth() {
+        return lastDepth;
+    }
+
+    /**
+     * @return The nodes visited by the latest search, including the dropped iteration
+     */
+    public long getLastNodes() {
+        return lastNodes;
+    }
+
+    public double getLastNodesPerSecond() {
+        return lastNanos == 0 ? 0 : lastNodes / (lastNanos / 1e9);
+    }
+
+    /**
+     * @return The score of the latest finished iteration, for the player who moved
+     */
+    public int getLastScore() {
+        return lastScore;
+    }
+
+    @Override
+    public String getBotName() {
+        return BOT_NAME;
+    }
+}
@@ -1,14 +1,19 @@
 package dk.easv.bll.bot;
 
+import dk.easv.bll.bot.search.RootParallelSearch;
+import dk.easv.bll.bot.search.TimeManager;
 import dk.easv.bll.field.IField;
-import dk.easv.bll.game.GameState;
+import dk.easv.bll.game.GameManager.GameOverState;
+import dk.easv.bll.game.GameSimulator;
 import dk.easv.bll.game.IGameState;
+import dk.easv.bll.game.RulesTable;
 import dk.easv.bll.move.IMove;
 import dk.easv.bll.move.Move;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
+import java.util.SplittableRandom;
 
 /**
  * READ_______________________________________
@@ -22,13 +27,15 @@ import java.util.Random;
 
 
 public class BotTest implements IBot {
-    final int moveTimeMs = 100;
     private String BOT_NAME = getClass().getSimpleName();
     private static final double UCT_EXPLORATION = 1.4142;
     private final Random rnd = new Random();
-
-    // Hold the current game state for use in evaluateMove
-    private IGameState currentGameState;
+    private final TimeManager time = new TimeManager(); // Gives each move getTimePerMove() of the state
+    private int threads = 1;
+    private boolean reuseTree = true;
+    private Node lastTree = null; // The subtree below the move played last time
+    private double lastRetainedVisits = 0;
+    private int lastIterations = 0;
 
     /*private IMove findBestCenterMove(IGameState state) {
         List<IMove> moves = state.getField().getAvailableMoves();
@@ -42,16 +49,13 @@ public class BotTest implements IBot {
 
     // New helper: scan for an immediate winning move on the macroboard.
     private IMove findImmediateWinningMove(IGameState state) {
-        for (IMove move : state.getField().getAvailableMoves()) {
-            IGameState tempState = cloneState(state);
-            updateGame(tempState, move, currentPlayer(tempState));
-
-            // Check if the move wins at the sub-board level
-            if (isLocalWin(tempState.getField().getBoard(), move, String.valueOf(currentPlayer(tempState)))) {
-                // If it also leads to a macroboard win, prioritize immediately
-                if (gameOver(tempState) == GameOverState.Win) {
-                    return move; // Highest priority
-                }
+        GameSimulator simulator = GameSimulator.copyOf(state);
+        for (IMove move : simulator.getAvailableMoves()) {
+            simulator.makeMove(move.getX(), move.getY());
+            boolean wins = simulator.getGameOver() == GameOverState.Win;
+            simulator.unmakeMove();
+            if (wins) {
+                return move; // Highest priority
             }
         }
         return null;
@@ -59,9 +63,11 @@ public class BotTest implements IBot {
 
     @Override
     public IMove doMove(IGameState state) {
-        // Save the state in the field for access in evaluateMove
-        currentGameState = state;
-
+        lastRetainedVisits = 0;
+        lastIterations = 0;
+        Node previous = lastTree;
+        lastTree = null;
+        time.start(state, state.getField().getAvailableMoves().size());
         if (state.getMoveNumber() == 0) {
             IMove firstCenter = new Move(4, 4);
             if (state.getField().getAvailableMoves().contains(firstCenter)) {
@@ -80,27 +86,87 @@ public class BotTest implements IBot {
             return bestCenterMove;
         }*/
 
-        long endTime = System.currentTimeMillis() + moveTimeMs;
-        Node root = new Node(null, cloneState(state), null);
+        GameSimulator simulator = GameSimulator.copyOf(state);
+        Node root = reuseTree ? findSubtree(previous, simulator.getHash(), state.getMoveNumber()) : null;
+        if (root != null)
+            lastRetainedVisits = root.visits;
+        else
+            root = new Node(null, simulator, null);
+        IMove move;
+        if (threads > 1) {
+            move = searchRootParallel(state, root);
+        } else {
+            lastIterations = iterate(root, new SplittableRandom(rnd.nextLong()));
+            Node best = bestChild(root);
+            move = best.move != null ? best.move : randomMove(state);
+        }
+        if (reuseTree)
+            lastTree = findChild(root, move);
+        return move;
+    }
+
+    // Subtree reuse: the position is usually the opponent's reply to the move played last time,
+    // so it is one of the children of that move's node. Found by hash, and cut loose from the
+    // old tree so the rest of it can be collected
+    private Node findSubtree(Node previous, long hash, int moveNumber) {
+        if (previous == null)
+            return null;
+        for (Node child : previous.children) {
+            if (child.simulator.getHash() == hash && child.state.getMoveNumber() == moveNumber) {
+                child.parent = null;
+                return child;
+            }
+        }
+        return null;
+    }
+
+    private Node findChild(Node node, IMove move) {
+        for (Node child : node.children)
+            if (child.move.equals(move))
+                return child;
+        return null;
+    }
+
+    // Searches a private copy of the position on every thread and merges the root moves at the end
+    private IMove searchRootParallel(IGameState state, Node root) {
+        List<RootParallelSearch.Search> searches = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Node own = i == 0 ? root : new Node(null, root.simulator.copy(), null);
+            searches.add((random, stats) -> {
+                int iterations = iterate(own, random);
+                for (Node child : own.children)
+                    stats.add(child.move, child.visits, child.score);
+                return iterations;
+            });
+        }
+        RootParallelSearch.Statistics merged = RootParallelSearch.run(searches, rnd.nextLong());
+        lastIterations = merged.getIterations();
+        IMove best = merged.bestMove();
+        return best != null ? best : randomMove(state);
+    }
+
+    // MCTS core methods
+
+    private int iterate(Node root, SplittableRandom random) {
         double alpha = Double.NEGATIVE_INFINITY;
         double beta = Double.POSITIVE_INFINITY;
-        while (System.currentTimeMillis() < endTime) {
+        int iterations = 0;
+        // The threads of a parallel search share the time manager and stop together
+        while (!time.isHardTimeUp()) {
+            iterations++;
             Node promising = selectNode(root, alpha, beta);
-            if (!isTerminal(promising.state)) {
+            if (!promising.simulator.isTerminal()) {
                 expandNode(promising);
             }
             Node toExplore = promising.children.isEmpty()
                     ? promising
-                    : promising.children.get(rnd.nextInt(promising.children.size()));
-            int result = simulate(toExplore.state);
+                    : promising.children.get(random.nextInt(promising.children.size()));
+            int result = simulate(toExplore.simulator, random);
             backpropagate(toExplore, result);
         }
-        Node best = bestChild(root);
-        return best.move != null ? best.move : randomMove(state);
+        return iterations;
     }
 
-    // MCTS core methods
-
     private Node selectNode(Node node, double alpha, double beta) {
         Node current = node;
         while (!current.children.isEmpty()) {
@@ -116,48 +182,29 @@ public class BotTest implements IBot {
     private void expandNode(Node node) {
         List<IMove> moves = node.state.getField().getAvailableMoves();
         // Use evaluateMove to sort moves by a heuristic (here we use evaluateBoard on the resulting state)
-        moves.sort((m1, m2) -> Integer.compare(evaluateMove(m2), evaluateMove(m1)));
+        moves.sort((m1, m2) -> Integer.compare(evaluateMove(node.simulator, m2), evaluateMove(node.simulator, m1)));
         int limit = Math.min(moves.size(), 5); // Expand only the top 5 moves
         for (int i = 0; i < limit; i++) {
             IMove move = moves.get(i);
-            IGameState newState = cloneState(node.state);
-            updateGame(newState, move, currentPlayer(newState));
-            node.children.add(new Node(move, newState, node));
+            GameSimulator simulator = node.simulator.copy();
+            simulator.play(move);
+            Node child = new Node(move, simulator, node);
+            child.heuristic = evaluateBoard(child.state); // Worked out once, for bestUCTChild
+            node.children.add(child);
         }
     }
 
     // In this example, evaluateMove is computed by applying the move heuristics via evaluateBoard.
-    private int evaluateMove(IMove move) {
-        // Use the current state stored in the field.
-        IGameState tempState = cloneState(currentGameState);
-        updateGame(tempState, move, currentPlayer(tempState));
-        return evaluateBoard(tempState);
+    private int evaluateMove(GameSimulator from, IMove move) {
+        // Play the move in the node being expanded
+        GameSimulator simulator = from.copy();
+        simulator.play(move);
+        return evaluateBoard(simulator.getCurrentState());
     }
 
     private boolean isWinningPattern(String[][] board, String player) {
-        // Define winning patterns (e.g., rows, columns, diagonals)
-        int[][][] patterns = {
-                {{0, 0}, {0, 1}, {0, 2}},
-                {{1, 0}, {1, 1}, {1, 2}},
-                {{2, 0}, {2, 1}, {2, 2}},
-                {{0, 0}, {1, 0}, {2, 0}},
-                {{0, 1}, {1, 1}, {2, 1}},
-                {{0, 2}, {1, 2}, {2, 2}},
-                {{0, 0}, {1, 1}, {2, 2}},
-                {{0, 2}, {1, 1}, {2, 0}}
-        };
-
-        for (int[][] pattern : patterns) {
-            boolean win = true;
-            for (int[] cell : pattern) {
-                if (!board[cell[0]][cell[1]].equals(player)) {
-                    win = false;
-                    break;
-                }
-            }
-            if (win) return true;
-        }
-        return false;
+        // Winning patterns (rows, columns, diagonals) are looked up in the shared rules table
+        return RulesTable.isWin(RulesTable.ownerMask(board, 0, 0, player));
     }
 
     private int evaluateBoard(IGameState state) {
@@ -251,17 +298,17 @@ public class BotTest implements IBot {
         return localX == 1 && localY == 1;
     }*/
 
-    private int simulate(IGameState simState) {
-        IGameState temp = cloneState(simState);
+    private int simulate(GameSimulator from, SplittableRandom random) {
+        GameSimulator temp = from.copy();
+        int[] cells = new int[81];
         int totalScore = 0;
-        while (!isTerminal(temp)) {
-            List<IMove> moves = temp.getField().getAvailableMoves();
-            if (moves.isEmpty()) break;
-            IMove move = moves.get(rnd.nextInt(moves.size()));
-            updateGame(temp, move, currentPlayer(temp));
-            totalScore += evaluateBoard(temp);
+        while (!temp.isTerminal()) {
+            int count = temp.getAvailableMoves(cells);
+            int cell = cells[random.nextInt(count)];
+            temp.play(cell / 9, cell % 9);
+            totalScore += evaluateBoard(temp.getCurrentState());
         }
-        GameOverState result = gameOver(temp);
+        GameOverState result = temp.getGameOver();
         if (result == GameOverState.Win) {
             totalScore += 10;
         } else if (result == GameOverState.Tie) {
@@ -308,7 +355,7 @@ public class BotTest implements IBot {
         double bestValue = Double.NEGATIVE_INFINITY;
         double explorationConstant = getDynamicExplorationConstant(state);
         for (Node c : children) {
-            double heuristicValue = evaluateBoard(c.state);
+            double heuristicValue = c.heuristic;
             double uctValue = (c.score / (c.visits + 1e-6))
                     + explorationConstant * Math.sqrt(Math.log(parentVisits + 1e-6) / (c.visits + 1e-6))
                     + heuristicValue;
@@ -329,184 +376,57 @@ public class BotTest implements IBot {
         return moves.get(rnd.nextInt(moves.size()));
     }
 
-    private static boolean isTerminal(IGameState state) {
-        return state.getField().getAvailableMoves().isEmpty() || gameOver(state) != GameOverState.Active;
-    }
-
-    // Modified gameOver now checks for a win on the macroboard.
-    private static GameOverState gameOver(IGameState state) {
-        String[][] macroBoard = state.getField().getMacroboard();
-        if (isWin(macroBoard, "0") || isWin(macroBoard, "1")) {
-            return GameOverState.Win;
-        }
-        // Tie detection can be expanded as needed.
-        return GameOverState.Active;
-    }
-
-    // Check if the 3x3 macroboard has three in a row for the given player.
-    private static boolean isWin(String[][] board, String player) {
-        // check rows and columns
-        for (int i = 0; i < 3; i++) {
-            if (board[i][0].equals(player) && board[i][1].equals(player) && board[i][2].equals(player))
-                return true;
-            if (board[0][i].equals(player) && board[1][i].equals(player) && board[2][i].equals(player))
-                return true;
-        }
-        // check diagonals
-        if (board[0][0].equals(player) && board[1][1].equals(player) && board[2][2].equals(player))
-            return true;
-        if (board[0][2].equals(player) && board[1][1].equals(player) && board[2][0].equals(player))
-            return true;
-        return false;
-    }
-
-    // Modified updateGame also updates the macroboard.
-    private void updateGame(IGameState state, IMove move, int player) {
-        if (move == null) return;
-        state.getField().getBoard()[move.getX()][move.getY()] = String.valueOf(player);
-        state.setMoveNumber(state.getMoveNumber() + 1);
-        updateMacroboard(state, move, player);
-    }
-
-    // Update the macroboard based on the move.
-    private void updateMacroboard(IGameState state, IMove move, int player) {
-        // Assume state.getField().getMacroboard() returns a 3x3 String array.
-        String[][] macroBoard = state.getField().getMacroboard();
-        int macroX = move.getX() / 3;
-        int macroY = move.getY() / 3;
-        // If the microboard corresponding to the move is not yet decided, check for a win.
-        if (macroBoard[macroX][macroY].equals(IField.EMPTY_FIELD) ||
-                macroBoard[macroX][macroY].equals(IField.AVAILABLE_FIELD)) {
-            String[][] board = state.getField().getBoard();
-            if (isLocalWin(board, move, String.valueOf(player))) {
-                macroBoard[macroX][macroY] = String.valueOf(player);
-            }
-        }
-        // Update available fields: if target macroboard cell is already won, set all empty cells to available.
-        int xTrans = move.getX() % 3;
-        int yTrans = move.getY() % 3;
-        if (macroBoard[xTrans][yTrans].equals(IField.EMPTY_FIELD)) {
-            macroBoard[xTrans][yTrans] = IField.AVAILABLE_FIELD;
-        } else {
-            for (int i = 0; i < 3; i++) {
-                for (int j = 0; j < 3; j++) {
-                    if (macroBoard[i][j].equals(IField.EMPTY_FIELD))
-                        macroBoard[i][j] = IField.AVAILABLE_FIELD;
-                }
-            }
-        }
+    @Override
+    public String getBotName() {
+        return BOT_NAME;
     }
 
-    // Check a local 3x3 microboard win for the move.
-    private boolean isLocalWin(String[][] board, IMove move, String player) {
-        int localX = move.getX() % 3;
-        int localY = move.getY() % 3;
-        int startX = move.getX() - localX;
-        int startY = move.getY() - localY;
-
-        // check row
-        boolean win = true;
-        for (int i = startX; i < startX + 3; i++) {
-            if (!board[i][move.getY()].equals(player)) {
-                win = false;
-                break;
-            }
-        }
-        if (win) return true;
-        // check column
-        win = true;
-        for (int i = startY; i < startY + 3; i++) {
-            if (!board[move.getX()][i].equals(player)) {
-                win = false;
-                break;
-            }
-        }
-        if (win) return true;
-        // check diagonal
-        if (localX == localY) {
-            win = true;
-            int y = startY;
-            for (int i = startX; i < startX + 3; i++) {
-                if (!board[i][y++].equals(player)) {
-                    win = false;
-                    break;
-                }
-            }
-            if (win) return true;
-        }
-        // check anti-diagonal
-        if (localX + localY == 2) {
-            win = true;
-            int y = startY + 2;
-            for (int i = startX; i < startX + 3; i++) {
-                if (!board[i][y--].equals(player)) {
-                    win = false;
-                    break;
-                }
-            }
-            if (win) return true;
-        }
-        return false;
+    /**
+     * Keeps the subtree below the move played and continues from it next time,
+     * if the opponent's reply is in it (on by default).
+     */
+    public void setReuseTree(boolean reuseTree) {
+        this.reuseTree = reuseTree;
     }
 
-    private int currentPlayer(IGameState state) {
-        return state.getMoveNumber() % 2;
+    /**
+     * @return The visits the latest doMove started with from the previous search
+     */
+    public double getLastRetainedVisits() {
+        return lastRetainedVisits;
     }
 
-    // This cloneState should perform a deep copy of the state.
-    private IGameState cloneState(IGameState original) {
-        // Assume that your concrete GameState class has a no-arg constructor.
-        IGameState clone = new GameState();
-
-        // Deep clone the board.
-        String[][] originalBoard = original.getField().getBoard();
-        String[][] cloneBoard = new String[originalBoard.length][];
-        for (int i = 0; i < originalBoard.length; i++) {
-            cloneBoard[i] = originalBoard[i].clone();
-        }
-        clone.getField().setBoard(cloneBoard);
-
-        // Deep clone the macroboard if it exists.
-        String[][] originalMacro = original.getField().getMacroboard();
-        if (originalMacro != null) {
-            String[][] cloneMacro = new String[originalMacro.length][];
-            for (int i = 0; i < originalMacro.length; i++) {
-                cloneMacro[i] = originalMacro[i].clone();
-            }
-            clone.getField().setMacroboard(cloneMacro);
-        }
-
-        // Copy the move number.
-        clone.setMoveNumber(original.getMoveNumber());
-
-        // Extend cloning for any other fields if needed.
-        return clone;
+    /**
+     * @return The number of MCTS iterations the latest doMove managed, 0 if it did not search
+     */
+    public int getLastIterations() {
+        return lastIterations;
     }
 
-    @Override
-    public String getBotName() {
-        return BOT_NAME;
+    /**
+     * Sets the number of independent searches run side by side (1 by default),
+     * each on its own thread and tree. See RootParallelSearch.
+     */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
     }
 
     // Node class for MCTS
     private static class Node {
         IMove move;
+        GameSimulator simulator;
         IGameState state;
         Node parent;
         List<Node> children = new ArrayList<>();
         double score = 0;
         double visits = 0;
+        int heuristic = 0; // evaluateBoard of the state, the bias term in bestUCTChild
 
-        Node(IMove move, IGameState state, Node parent) {
+        Node(IMove move, GameSimulator simulator, Node parent) {
             this.move = move;
-            this.state = state;
+            this.simulator = simulator;
+            this.state = simulator.getCurrentState();
             this.parent = parent;
         }
     }
-
-    public enum GameOverState {
-        Active,
-        Win,
-        Tie
-    }
 }
\ No newline at end of file
@@ -1,6 +1,10 @@
 package dk.easv.bll.bot;
 
+import dk.easv.bll.bot.search.TimeManager;
+import dk.easv.bll.game.GameManager;
+import dk.easv.bll.game.GameSimulator;
 import dk.easv.bll.game.IGameState;
+import dk.easv.bll.game.Zobrist;
 import dk.easv.bll.move.IMove;
 // import javafx.scene.Node;
 
@@ -12,13 +16,26 @@ import static dk.easv.bll.game.GameManager.GameOverState.Win;
 
 public class FillerNameBot implements IBot {
     private static final String BOT_NAME="FillerBotName";
-    private static final int SIMULATIONS = 1000;
     private final Random rnd = new Random();
+    private final TimeManager time = new TimeManager(); // Gives each move getTimePerMove() of the state
+    private boolean reuseTree = true;
+    private Node lastTree = null; // The subtree below the move played last time
+    private double lastRetainedVisits = 0;
+    private int lastSimulations = 0;
+    private final int[] cells = new int[81]; // Playout moves, so playouts allocate nothing for them
 
     @Override
     public IMove doMove(IGameState state) {
-        Node root = new Node(null, state, null);
-        for (int i = 0; i < SIMULATIONS; i++) {
+        Node root = reuseTree ? findSubtree(lastTree, Zobrist.hash(state), state.getMoveNumber()) : null;
+        lastRetainedVisits = root == null ? 0 : root.visits;
+        if (root == null) {
+            GameSimulator copy = GameSimulator.copyOf(state);
+            root = new Node(null, copy.getCurrentState(), copy.getHash(), null);
+        }
+        time.start(state, state.getField().getAvailableMoves().size());
+        lastSimulations = 0;
+        while (!time.isTimeUp()) {
+            lastSimulations++;
             Node promising = selectNode(root);
             if (!isTerminal(promising.gameState))
                 expand(promising);
@@ -28,11 +45,30 @@ public class FillerNameBot implements IBot {
                 nodeToExplore = promising.getRandomChild();
             int result = simulate(nodeToExplore);
             bprop(nodeToExplore, result);
+            Node best = root.getChildWithBestScore();
+            if (best != null)
+                time.setBestMove(best.move.getX() * 9 + best.move.getY());
         }
         Node best = root.getChildWithBestScore();
+        lastTree = reuseTree ? best : null;
         return best == null ? getRandomMove(state) : best.move;
     }
 
+    // Subtree reuse: the position is usually the opponent's reply to the move played last time,
+    // so it is one of the children of that move's node. Found by hash, and cut loose from the
+    // old tree so the rest of it can be collected
+    private Node findSubtree(Node previous, long hash, int moveNumber) {
+        if (previous == null)
+            return null;
+        for (Node child : previous.children) {
+            if (child.hash == hash && child.gameState.getMoveNumber() == moveNumber) {
+                child.parent = null;
+                return child;
+            }
+        }
+        return null;
+    }
+
     private Node selectNode(Node root) {
         Node current = root;
         while (!current.children.isEmpty())
@@ -40,19 +76,26 @@ public class FillerNameBot implements IBot {
         return current;
     }
 
+    // Every child gets its own copy of the state, which keeps the hash without working it out again
     private void expand(Node node) {
-        for (IMove m : node.gameState.getField().getAvailableMoves()) {
-            IGameState clone = cloneState(node.gameState, m);
-            node.children.add(new Node(m, clone, node));
+        GameSimulator parent = new GameSimulator(node.gameState);
+        for (IMove m : parent.getAvailableMoves()) {
+            GameSimulator child = parent.copy();
+            child.play(m);
+            node.children.add(new Node(m, child.getCurrentState(), child.getHash(), node));
         }
     }
 
+    // Plays out on the node's own state with makeMove and takes the moves back again, so nothing is copied
     private int simulate(Node node) {
-        IGameState temp = cloneState(node.gameState, null);
-        while (!isTerminal(temp)) {
-            List<IMove> moves = temp.getField().getAvailableMoves();
-            IMove nextMove = moves.get(rnd.nextInt(moves.size()));
-            temp = cloneState(temp, nextMove);
+        GameSimulator simulator = new GameSimulator(node.gameState);
+        while (!simulator.isTerminal()) {
+            int count = simulator.getAvailableMoves(cells);
+            int cell = cells[rnd.nextInt(count)];
+            simulator.makeMove(cell / 9, cell % 9);
+        }
+        while (simulator.unmakeMove()) {
+            // Back to the node's position
         }
         return 1;
     }
@@ -67,11 +110,8 @@ public class FillerNameBot implements IBot {
     }
 
     private boolean isTerminal(IGameState state) {
-        return state.getField().getAvailableMoves().isEmpty();
-    }
-
-    private IGameState cloneState(IGameState original, IMove move) {
-        return original;
+        return GameSimulator.getGameOver(state.getField()) != GameManager.GameOverState.Active
+                || state.getField().getActiveMask() == 0;
     }
 
     private IMove getRandomMove(IGameState state) {
@@ -82,6 +122,7 @@ public class FillerNameBot implements IBot {
     private class Node {
         IMove move;
         IGameState gameState;
+        long hash;
         Node parent;
         List<Node> children = new ArrayList<>();
         double visits = 0;
@@ -90,9 +131,10 @@ public class FillerNameBot implements IBot {
         private Random nodeRnd = new Random();
 
 
-        Node(IMove move, IGameState gameState, Node parent) {
+        Node(IMove move, IGameState gameState, long hash, Node parent) {
             this.move = move;
             this.gameState = gameState;
+            this.hash = hash;
             this.parent = parent;
         }
 
@@ -152,4 +194,26 @@ public class FillerNameBot implements IBot {
     public String getBotName() {
         return BOT_NAME;
     }
+
+    /**
+     * Keeps the subtree below the move played and continues from it next time,
+     * if the opponent's reply is in it (on by default).
+     */
+    public void setReuseTree(boolean reuseTree) {
+        this.reuseTree = reuseTree;
+    }
+
+    /**
+     * @return The visits the latest doMove started with from the previous search
+     */
+    public double getLastRetainedVisits() {
+        return lastRetainedVisits;
+    }
+
+    /**
+     * @return The number of simulations the latest doMove managed in its time
+     */
+    public int getLastSimulations() {
+        return lastSimulations;
+    }
 }
@@ -0,0 +1,33 @@
+package dk.easv.bll.bot;
+
+import dk.easv.bll.game.IGameState;
+
+/**
+ * A bot that can think on the opponent's time (pondering).
+ *
+ * After the bot's move, startPondering lets it go on searching in the background
+ * while the opponent thinks. The next doMove stops the pondering and continues
+ * from what it found, if the opponent played one of the moves it looked at.
+ */
+public interface IPonderingBot extends IBot {
+
+    /**
+     * Starts thinking in the background, until stopPondering or the next doMove.
+     *
+     * @param state The position after the bot's move, with the opponent to move. It is copied at once
+     */
+    void startPondering(IGameState state);
+
+    /**
+     * Stops the pondering, if any. Returns at once, so it may be called from the GUI thread:
+     * the background search ends on its own shortly after, and the next doMove waits for that.
+     * Call it when the game ends or is closed.
+     */
+    void stopPondering();
+
+    /**
+     * @return The time spent pondering that the latest doMove could build on, in milliseconds.
+     * 0 if the opponent's move was not one the pondering looked at
+     */
+    long getLastPonderMs();
+}
@@ -1,8 +1,17 @@
 package dk.easv.bll.bot;
 
+import dk.easv.bll.bot.search.EndgameSolver;
+import dk.easv.bll.bot.search.IncrementalEvaluator;
+import dk.easv.bll.bot.search.NodeArena;
+import dk.easv.bll.bot.search.RootParallelSearch;
+import dk.easv.bll.bot.search.TimeManager;
+import dk.easv.bll.bot.search.TranspositionTable;
+import dk.easv.bll.field.Cell;
 import dk.easv.bll.field.IField;
-import dk.easv.bll.game.GameState;
+import dk.easv.bll.game.GameManager.GameOverState;
+import dk.easv.bll.game.GameSimulator;
 import dk.easv.bll.game.IGameState;
+import dk.easv.bll.game.MicroBoardTable;
 import dk.easv.bll.move.IMove;
 import dk.easv.bll.move.Move;
 
@@ -10,6 +19,12 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 /**
  *
@@ -21,80 +36,97 @@ import java.util.Random;
  *
  */
 
-public class MortenBoT implements IBot {
-    final int moveTimeMs = 100;
+public class MortenBoT implements IPonderingBot {
     private String BOT_NAME = getClass().getSimpleName();
     private static final double UCT_EXPLORATION = 1.4142;
+    // Score a search thread takes off every node on its path until its playout is backpropagated,
+    // so the other threads are steered to other branches meanwhile. About one standard deviation
+    // of a playout result. Only used with more than one thread
+    private static final double VIRTUAL_LOSS = 1000;
+    // Nodes per tree (54 bytes each). A search that fills the tree carries on without expanding.
+    // Only the moves selection may choose from get nodes, see addChildren
+    private static final int TREE_NODES = 1 << 15;
+    // Without progressive widening, only this many of the best moves of a node are searched
+    private static final int FIXED_WIDTH = 5;
+    private static final int ROOT = 0; // NodeArena always puts the root first
+    private static final int NOT_SOLVED = 2;
     private final Random rnd = new Random();
 
-    // Hold the current game state for use in evaluateMove
-    private IGameState currentGameState;
+    // Kept by each MortenBoT, so transpositions (and positions from earlier moves) reuse what was
+    // already found out about them, but two bots in the same game never see each other's searches.
+    // Keyed by Zobrist hash. Solutions are exact, so they are shared by all MortenBoT instances
+    private final TranspositionTable statistics = new TranspositionTable(1 << 16);
+    private final TranspositionTable evaluations = new TranspositionTable(1 << 16);
+    private static final TranspositionTable SOLUTIONS = new TranspositionTable(1 << 18);
+    // A new node starts with at most this many visits from the statistics table, at the mean found
+    // there. Otherwise the visits a node was seeded with are stored again with its own, and
+    // seed the next node for the position, so they pile up from move to move
+    private static final int PRIOR_VISITS = 10;
+    private boolean useTranspositions = true;
+    private int threads = 1;
+    private boolean rootParallel = false;
+    private int leafBatch = 1;
+    private double raveEquivalence = 0; // 0 turns RAVE off
+    // Progressive widening: a node with n visits searches its best ceil(k * n^alpha) moves. k <= 0 turns it off
+    private double wideningFactor = 2;
+    private double wideningExponent = 0.4;
+    private int iterationLimit = 0;
+    private boolean reuseTree = true;
+    // Positions with at most this many playable cells are solved exactly, if it can be done in time
+    private int endgameThreshold = 20;
+    private final EndgameSolver solver = new EndgameSolver(SOLUTIONS);
+    // The time for each move comes from getTimePerMove() of the state
+    private final TimeManager time = new TimeManager();
+    // Pondering searches the kept tree on this thread while the opponent thinks
+    private final TimeManager ponderTime = new TimeManager();
+    // Volatile, as stopPondering and getLastPonderMs may be called from the GUI thread
+    private volatile Thread ponderThread = null;
+    private volatile long ponderStart = 0;
+    private volatile long ponderNanos = 0; // The length of the latest pondering, 0 if the tree was not grown by it
+    private volatile long lastPonderMs = 0;
+    private int lastSolverResult = NOT_SOLVED;
+    private int lastProof = NodeArena.UNPROVEN;
+    // The search tree, kept from one move to the next for subtree reuse
+    private NodeArena tree = new NodeArena(TREE_NODES);
+    private NodeArena spareTree = null;
+    private NodeArena[] rootParallelTrees = new NodeArena[0];
+    private int lastTree = NodeArena.NONE; // The node of the move played last time
+    private int lastRetainedVisits = 0;
+    private int lastIterations = 0;
+    private Consumer<IGameState> nodeListener = null;
 
     // New helper: scan for an immediate winning move on the macroboard.
     private IMove findImmediateWinningMove(IGameState state) {
-        for (IMove move : state.getField().getAvailableMoves()) {
-            IGameState tempState = cloneState(state);
-            updateGame(tempState, move, currentPlayer(tempState));
-
-            // Check if the move wins at the sub-board level
-            if (isLocalWin(tempState.getField().getBoard(), move, String.valueOf(currentPlayer(tempState)))) {
-                // If it also leads to a macroboard win, prioritize immediately
-                if (gameOver(tempState) == GameOverState.Win) {
-                    return move; // Highest priority
-                }
+        GameSimulator simulator = GameSimulator.copyOf(state);
+        for (IMove move : simulator.getAvailableMoves()) {
+            simulator.makeMove(move.getX(), move.getY());
+            boolean wins = simulator.getGameOver() == GameOverState.Win;
+            simulator.unmakeMove();
+            if (wins) {
+                return move; // Highest priority
             }
         }
         return null;
     }
 
-    // Check if a move results in a win on the sub-board
-    private boolean isWinningMove(IGameState state, IMove move, String player) {
-        String[][] board = Arrays.stream(state.getField().getBoard()).map(String[]::clone).toArray(String[][]::new);
-        board[move.getX()][move.getY()] = player;
-
-        int startX = move.getX() - (move.getX() % 3);
-        if (board[startX][move.getY()].equals(player))
-            if (board[startX][move.getY()].equals(board[startX + 1][move.getY()]) &&
-                    board[startX + 1][move.getY()].equals(board[startX + 2][move.getY()]))
-                return true;
-
-        int startY = move.getY() - (move.getY() % 3);
-        if (board[move.getX()][startY].equals(player))
-            if (board[move.getX()][startY].equals(board[move.getX()][startY + 1]) &&
-                    board[move.getX()][startY + 1].equals(board[move.getX()][startY + 2]))
-                return true;
-
-        if (board[startX][startY].equals(player))
-            if (board[startX][startY].equals(board[startX + 1][startY + 1]) &&
-                    board[startX + 1][startY + 1].equals(board[startX + 2][startY + 2]))
-                return true;
-
-        if (board[startX][startY + 2].equals(player))
-            if (board[startX][startY + 2].equals(board[startX + 1][startY + 1]) &&
-                    board[startX + 1][startY + 1].equals(board[startX + 2][startY]))
-                return true;
-
-        return false;
-    }
-
     // Compile a list of all available winning moves
     private List<IMove> getWinningMoves(IGameState state) {
-        String player = currentPlayer(state) == 0 ? "0" : "1";
+        int player = GameSimulator.currentPlayer(state);
         List<IMove> avail = state.getField().getAvailableMoves();
         List<IMove> winningMoves = new ArrayList<>();
         for (IMove move : avail) {
-            if (isWinningMove(state, move, player))
+            if (MicroBoardTable.isWinningMove(state.getField(), move, player))
                 winningMoves.add(move);
         }
         return winningMoves;
     }
 
     private List<IMove> getBlockingMoves(IGameState state) {
-        String opponent = currentPlayer(state) == 0 ? "1" : "0";
+        int opponent = 1 - GameSimulator.currentPlayer(state);
         List<IMove> avail = state.getField().getAvailableMoves();
         List<IMove> blockingMoves = new ArrayList<>();
         for (IMove move : avail) {
-            if (isWinningMove(state, move, opponent)) {
+            if (MicroBoardTable.isWinningMove(state.getField(), move, opponent)) {
                 blockingMoves.add(move);
         }
     }
@@ -103,9 +135,17 @@ public class MortenBoT implements IBot {
 
     @Override
     public IMove doMove(IGameState state) {
-        // Save the state in the field for access in evaluateMove
-        currentGameState = state;
-
+        awaitPondering();
+        long pondered = ponderNanos;
+        ponderNanos = 0;
+        lastPonderMs = 0;
+        time.start(state, state.getField().getAvailableMoves().size()); // The solver and the search share the time
+        lastIterations = 0;
+        lastRetainedVisits = 0;
+        lastSolverResult = NOT_SOLVED;
+        lastProof = NodeArena.UNPROVEN;
+        int previous = lastTree;
+        lastTree = NodeArena.NONE;
         if (state.getMoveNumber() == 0) {
             List<IMove> cornerMoves = Arrays.asList(
                     new Move(3, 3),
@@ -126,6 +166,16 @@ public class MortenBoT implements IBot {
             return winMove;
         }
 
+        // Late in the game, try to solve the position within half the time. A proven win or draw
+        // is played, a proven loss is left to the MCTS, which may still find the best try
+        if (EndgameSolver.getPlayableCells(state.getField()) <= endgameThreshold
+                && solver.solve(GameSimulator.copyOf(state),
+                        time.getStartTime() + (time.getHardDeadline() - time.getStartTime()) / 2)) {
+            lastSolverResult = solver.getResult();
+            if (lastSolverResult != EndgameSolver.LOSS)
+                return GameSimulator.toMove(solver.getBestMove());
+        }
+
         // Check for winning moves on the sub-boards.
         List<IMove> winMoves = getWinningMoves(state);
         if (!winMoves.isEmpty()) {
@@ -138,35 +188,267 @@ public class MortenBoT implements IBot {
             return blockingMoves.get(0);
         }
 
-        long endTime = System.currentTimeMillis() + moveTimeMs;
-        Node root = new Node(null, cloneState(state), null);
-        double alpha = Double.NEGATIVE_INFINITY;
-        double beta = Double.POSITIVE_INFINITY;
-        while (System.currentTimeMillis() < endTime) {
-            Node promising = selectNode(root, alpha, beta);
-            if (!isTerminal(promising.state)) {
-                expandNode(promising);
+        statistics.newSearch();
+        evaluations.newSearch();
+        GameSimulator root = GameSimulator.copyOf(state);
+        if (!reuseTree || !reuseSubtree(previous, root.getHash())) {
+            tree.addRoot(root.getHash(), root.isTerminal());
+            if (nodeListener != null) nodeListener.accept(root.getCurrentState());
+        } else {
+            lastPonderMs = pondered / 1_000_000;
+        }
+        IMove move;
+        if (rootParallel && threads > 1) {
+            move = searchRootParallel(state, root);
+        } else {
+            lastIterations = search(root);
+            lastProof = -tree.getProof(ROOT); // The root is seen from the opponent, who moved last
+            int best = bestChild(tree, ROOT);
+            move = best != NodeArena.NONE ? GameSimulator.toMove(tree.getMove(best)) : randomMove(state);
+        }
+        if (reuseTree)
+            lastTree = findChild(tree, ROOT, move);
+        return move;
+    }
+
+    // Subtree reuse: the position is usually the opponent's reply to the move played last time,
+    // so it is one of the children of that move's node. Found by hash, and copied to the spare
+    // arena as its root. The two arenas then swap, which drops the rest of the old tree
+    private boolean reuseSubtree(int previous, long hash) {
+        if (previous == NodeArena.NONE)
+            return false;
+        if (tree.getChildCount(previous) == 0)
+            return false;
+        // The reply may be one of the children that are not visible yet
+        for (int i = 0; i < tree.getChildCapacity(previous); i++) {
+            int child = tree.getChild(previous, i);
+            if (tree.getHash(child) == hash) {
+                makeRoot(child);
+                lastRetainedVisits = tree.getVisits(ROOT);
+                return true;
             }
-            Node toExplore = promising.children.isEmpty()
-                    ? promising
-                    : promising.children.get(rnd.nextInt(promising.children.size()));
-            int result = simulate(toExplore.state);
-            backpropagate(toExplore, result);
         }
-        Node best = bestChild(root);
-        return best.move != null ? best.move : randomMove(state);
+        return false;
+    }
+
+    // Copies the subtree of the node to the spare arena as its root, and swaps the arenas
+    private void makeRoot(int node) {
+        if (spareTree == null)
+            spareTree = new NodeArena(TREE_NODES);
+        tree.copyTree(node, spareTree);
+        NodeArena old = tree;
+        tree = spareTree;
+        spareTree = old;
+    }
+
+    // Pondering: the position is usually the one after the move played last time, so the
+    // search goes on below that move's node, made the root. The opponent's reply is then
+    // one of its children, which the next doMove finds with reuseSubtree. So it needs setReuseTree
+    @Override
+    public void startPondering(IGameState state) {
+        awaitPondering();
+        GameSimulator position = GameSimulator.copyOf(state);
+        if (!reuseTree || position.isTerminal())
+            return;
+        if (lastTree != NodeArena.NONE && tree.getHash(lastTree) == position.getHash()) {
+            makeRoot(lastTree);
+        } else {
+            tree.addRoot(position.getHash(), false);
+            if (nodeListener != null) nodeListener.accept(position.getCurrentState());
+        }
+        lastTree = ROOT;
+        NodeArena ponderTree = tree;
+        SplittableRandom random = new SplittableRandom(rnd.nextLong());
+        ponderStart = System.nanoTime();
+        ponderTime.startUntilStopped();
+        Thread thread = new Thread(() -> iterate(ponderTree, position, random, 0, ponderTime, 0), BOT_NAME + " ponder");
+        thread.setDaemon(true);
+        ponderThread = thread;
+        thread.start();
+    }
+
+    // Returns at once, it may be called from the GUI thread. The pondering thread sees the stopped
+    // clock within the playout or move evaluation it is busy with, and ends on its own
+    @Override
+    public void stopPondering() {
+        if (ponderThread == null || ponderTime.isStopped())
+            return;
+        ponderTime.stop();
+        ponderNanos = System.nanoTime() - ponderStart;
+    }
+
+    // Stops the pondering and waits for its thread to end, before the tree and the tables are used
+    // here. Stopping takes a few milliseconds at most, as node expansion checks the clock too.
+    // An interrupt does not cut the wait short, but is kept for the caller
+    private void awaitPondering() {
+        Thread thread = ponderThread;
+        if (thread == null)
+            return;
+        stopPondering();
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+        ponderThread = null;
+    }
+
+    private int findChild(NodeArena tree, int node, IMove move) {
+        int cell = move.getX() * 9 + move.getY();
+        for (int i = 0; i < tree.getChildCount(node); i++)
+            if (tree.getMove(tree.getChild(node, i)) == cell)
+                return tree.getChild(node, i);
+        return NodeArena.NONE;
+    }
+
+    // Runs the MCTS loop on this thread and on threads - 1 helper threads, all sharing the one tree
+    private int search(GameSimulator root) {
+        NodeArena shared = tree;
+        if (threads == 1)
+            return iterate(shared, root, new SplittableRandom(rnd.nextLong()), 0, time, iterationLimit);
+
+        AtomicInteger iterations = new AtomicInteger();
+        List<Thread> helpers = new ArrayList<>();
+        for (int i = 1; i < threads; i++) {
+            GameSimulator walker = root.copy();
+            SplittableRandom random = new SplittableRandom(rnd.nextLong());
+            Thread helper = new Thread(() -> iterations.addAndGet(iterate(shared, walker, random, VIRTUAL_LOSS, time, iterationLimit)),
+                    BOT_NAME + " search " + i);
+            helper.setDaemon(true);
+            helper.start();
+            helpers.add(helper);
+        }
+        iterations.addAndGet(iterate(shared, root, new SplittableRandom(rnd.nextLong()), VIRTUAL_LOSS, time, iterationLimit));
+        for (Thread helper : helpers) {
+            try {
+                helper.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return iterations.get();
+    }
+
+    // Searches a private copy of the position on every thread and merges the root moves at the end.
+    // The first thread searches the kept tree, the others their own trees, which are kept for next time
+    private IMove searchRootParallel(IGameState state, GameSimulator root) {
+        if (rootParallelTrees.length < threads)
+            rootParallelTrees = Arrays.copyOf(rootParallelTrees, threads);
+        List<RootParallelSearch.Search> searches = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            NodeArena own = tree;
+            GameSimulator walker = root;
+            if (i > 0) {
+                if (rootParallelTrees[i] == null)
+                    rootParallelTrees[i] = new NodeArena(TREE_NODES);
+                own = rootParallelTrees[i];
+                own.addRoot(root.getHash(), root.isTerminal());
+                walker = root.copy();
+            }
+            NodeArena ownTree = own;
+            GameSimulator ownWalker = walker;
+            searches.add((random, stats) -> {
+                int iterations = iterate(ownTree, ownWalker, random, 0, time, iterationLimit);
+                for (int k = 0; k < ownTree.getChildCount(ROOT); k++) {
+                    int child = ownTree.getChild(ROOT, k);
+                    stats.add(GameSimulator.toMove(ownTree.getMove(child)), ownTree.getVisits(child), ownTree.getValue(child));
+                }
+                return iterations;
+            });
+        }
+        RootParallelSearch.Statistics merged = RootParallelSearch.run(searches, rnd.nextLong());
+        lastIterations = merged.getIterations();
+        IMove best = merged.bestMove();
+        return best != null ? best : randomMove(state);
     }
 
     // MCTS
 
-    private Node selectNode(Node node, double alpha, double beta) {
-        Node current = node;
-        while (!current.children.isEmpty()) {
-            current = bestUCTChild(current.children, current.visits, current.state, alpha, beta);
-            if (current.score >= beta) {
+    // The walker is this thread's own copy of the root position. It follows the search down
+    // the tree and through the playout with makeMove, as the nodes hold no state, and is back
+    // at the root after every iteration.
+    // The search of the kept tree tells the clock its best move, so it can stop once that settles.
+    // With a limit, it runs that many iterations instead
+    private int iterate(NodeArena tree, GameSimulator walker, SplittableRandom random, double virtualLoss,
+                        TimeManager clock, int limit) {
+        boolean reportsBest = tree == this.tree;
+        double alpha = Double.NEGATIVE_INFINITY;
+        double beta = Double.POSITIVE_INFINITY;
+        int iterations = 0;
+        // Playout buffers, indexed by the order of the moves and by cell, so playouts allocate nothing for them
+        int[] cells = new int[81];
+        int[] sequence = new int[81];
+        int[] playedAt = new int[81];
+        Arrays.fill(playedAt, -1);
+        IncrementalEvaluator evaluator = new IncrementalEvaluator();
+        int[] path = new int[81];
+        LeafWorker[] workers = leafBatch > 1 ? leafWorkers(walker, random, path) : null;
+        // Stops early once the root is proven, there is nothing left to find out
+        while ((limit > 0 ? iterations < limit : !clock.isTimeUp())
+                && tree.getProof(ROOT) == NodeArena.UNPROVEN) {
+            iterations++;
+            int promising = selectNode(tree, walker, alpha, beta, virtualLoss, clock);
+            // Only one thread expands a node, the others play out from the node itself meanwhile
+            if (!tree.isTerminal(promising) && tree.tryExpand(promising)) {
+                expandNode(tree, promising, walker, clock);
+            }
+            int count = tree.getChildCount(promising);
+            int toExplore = promising;
+            if (count > 0) {
+                toExplore = tree.getChild(promising, random.nextInt(count));
+                walker.makeMove(tree.getMove(toExplore) / 9, tree.getMove(toExplore) % 9);
+                addVirtualLoss(tree, toExplore, virtualLoss);
+            }
+            if (leafBatch == 1) {
+                // Played on the walker itself, and taken back with the moves down the tree below
+                int leafDepth = walker.getUndoDepth();
+                int result = simulate(walker, random, cells, sequence, evaluator);
+                backpropagate(tree, toExplore, result, 1, virtualLoss);
+                if (raveEquivalence > 0)
+                    updateAmaf(tree, toExplore, sequence, walker.getUndoDepth() - leafDepth, result, playedAt);
+            } else {
+                long result = simulateBatch(workers, tree, toExplore, path);
+                backpropagate(tree, toExplore, result, leafBatch, virtualLoss);
+                if (raveEquivalence > 0) // Only the moves in the tree, the batch does not record its playouts
+                    updateAmaf(tree, toExplore, sequence, 0, (double) result / leafBatch, playedAt);
+            }
+            while (walker.unmakeMove()) {
+                // Back to the root
+            }
+            if (reportsBest) {
+                int best = bestChild(tree, ROOT);
+                if (best != NodeArena.NONE)
+                    clock.setBestMove(tree.getMove(best));
+            }
+        }
+        return iterations;
+    }
+
+    private int selectNode(NodeArena tree, GameSimulator walker, double alpha, double beta, double virtualLoss,
+                           TimeManager clock) {
+        int current = ROOT;
+        addVirtualLoss(tree, current, virtualLoss);
+        while (tree.getChildCount(current) > 0 && tree.getProof(current) == NodeArena.UNPROVEN) {
+            widen(tree, current, walker, clock);
+            int next = bestUCTChild(tree, current, walker.getCurrentState(), alpha, beta);
+            if (next == NodeArena.NONE) {
+                // Every visible child is a proven loss, so the next best move is worth a look
+                if (widenTo(tree, current, tree.getChildCount(current) + 1, walker, clock))
+                    continue;
+                return current; // Every child is a proven loss, but some moves were left out of the tree
+            }
+            current = next;
+            walker.makeMove(tree.getMove(current) / 9, tree.getMove(current) % 9);
+            addVirtualLoss(tree, current, virtualLoss);
+            if (tree.getValue(current) >= beta) {
                 return current;
             }
-            alpha = Math.max(alpha, current.score);
+            alpha = Math.max(alpha, tree.getValue(current));
         }
         return current;
     }
@@ -175,42 +457,175 @@ public class MortenBoT implements IBot {
     /*private void parallelExpandNode(Node node) {
         List<IMove> moves = node.state.getField().getAvailableMoves();
         moves.parallelStream().forEach(move -> {
-            IGameState newState = cloneState(node.state);
-            updateGame(newState, move, currentPlayer(newState));
+            GameSimulator simulator = node.simulator.copy();
+            simulator.play(move);
             synchronized (node.children) {
-                node.children.add(new Node(move, newState, node));
+                node.children.add(new Node(move, simulator, node));
             }
         });
     }*/
 
-    private void expandNode(Node node) {
-        List<IMove> moves = node.state.getField().getAvailableMoves();
-        // Use evaluateMove to sort moves by a heuristic (here we use evaluateBoard on the resulting state)
-        moves.sort((m1, m2) -> Integer.compare(evaluateMove(m2), evaluateMove(m1)));
-        int limit = Math.min(moves.size(), 5); // Expand only the top 5 moves
-        for (int i = 0; i < limit; i++) {
+    // Every move is scored once with evaluateMove and put in order of that score, best first.
+    // Moves that win the game come before everything else. Only the first few are visible at
+    // first and get a child now, selectNode makes more of them visible as the node gets visits
+    // (see addChildren). Scoring takes long, so it gives up once the clock is stopped, and the
+    // node stays a leaf
+    private void expandNode(NodeArena tree, int node, GameSimulator from, TimeManager clock) {
+        List<IMove> moves = from.getAvailableMoves();
+        int count = Math.min(width(tree.getVisits(node)), moves.size());
+        int first = tree.allocate(count);
+        if (first == NodeArena.NONE) {
+            return; // The tree is full, the node stays a leaf
+        }
+        long[] order = scoreMoves(from, moves, clock);
+        if (order == null)
+            return;
+        boolean proven = initChildren(tree, node, first, from, moves, order, count);
+        tree.publishChildren(node, first, count, count, count == moves.size());
+        if (proven)
+            propagateProof(tree, first); // A winning move is always first
+    }
+
+    // Sets up children for the rest of the moves of the node, which the walker is at, once widening
+    // gets past the ones it was expanded with. Leaves, which are most of the tree, never get that far,
+    // so their other moves take up no room in it. The scores are worked out again, mostly from the
+    // evaluation table
+    private void addChildren(NodeArena tree, int node, GameSimulator from, TimeManager clock) {
+        List<IMove> moves = from.getAvailableMoves();
+        long[] order = scoreMoves(from, moves, clock);
+        if (order == null)
+            return;
+        // The moves that have a child already are left out, the others keep their order
+        boolean[] hasChild = new boolean[81];
+        int existing = tree.getChildCapacity(node);
+        for (int i = 0; i < existing; i++)
+            hasChild[tree.getMove(tree.getChild(node, i))] = true;
+        int rest = 0;
+        for (int i = 0; i < order.length; i++) {
+            IMove move = moves.get((int) (order[i] & 0xFF));
+            if (!hasChild[move.getX() * 9 + move.getY()])
+                order[rest++] = order[i];
+        }
+        int first = rest == 0 ? NodeArena.NONE : tree.allocate(rest);
+        if (first == NodeArena.NONE)
+            return; // The tree is full, the node keeps the children it has
+        boolean proven = initChildren(tree, node, first, from, moves, order, rest);
+        tree.publishMoreChildren(node, first, rest);
+        if (proven)
+            propagateProof(tree, first);
+    }
+
+    // Plays every move on the simulator with makeMove, scores it and takes it back.
+    // Returns the moves in order of their score, best first, as the score in the high bits and
+    // the index in the low byte, so equal scores stay in move order. Null if the clock is stopped
+    private long[] scoreMoves(GameSimulator from, List<IMove> moves, TimeManager clock) {
+        long[] order = new long[moves.size()];
+        for (int i = 0; i < moves.size(); i++) {
+            if (clock.isStopped())
+                return null;
             IMove move = moves.get(i);
-            IGameState newState = cloneState(node.state);
-            updateGame(newState, move, currentPlayer(newState));
-            node.children.add(new Node(move, newState, node));
+            from.makeMove(move.getX(), move.getY());
+            int score = from.getGameOver() == GameOverState.Win ? Integer.MAX_VALUE : evaluateMove(from, move);
+            from.unmakeMove();
+            order[i] = ((long) -score << 8) | i;
+        }
+        Arrays.sort(order);
+        return order;
+    }
+
+    // Sets up the children for the first count moves of the order in the nodes from first on.
+    // Only the hash, the terminal flag and the heuristic for bestUCTChild are kept from the move.
+    // Returns true if one of them wins the game
+    private boolean initChildren(NodeArena tree, int node, int first, GameSimulator from, List<IMove> moves,
+                                 long[] order, int count) {
+        boolean proven = false;
+        for (int i = 0; i < count; i++) {
+            IMove move = moves.get((int) (order[i] & 0xFF));
+            int child = first + i;
+            from.makeMove(move.getX(), move.getY());
+            IGameState childState = from.getCurrentState();
+            tree.init(child, node, move.getX() * 9 + move.getY(), from.getHash(), from.isTerminal(),
+                    evaluateBoard(childState));
+            if (from.getGameOver() == GameOverState.Win) {
+                tree.setProof(child, NodeArena.PROVEN_WIN);
+                proven = true;
+            }
+            if (nodeListener != null) nodeListener.accept(childState);
+            if (useTranspositions) {
+                // Start from the statistics of the same position reached another way
+                long stats = statistics.probe(from.getHash());
+                if (stats != TranspositionTable.MISS) {
+                    int visits = Math.min(TranspositionTable.statsVisits(stats), PRIOR_VISITS);
+                    tree.setStatistics(child, visits, TranspositionTable.statsMean(stats) * visits);
+                }
+            }
+            from.unmakeMove();
+        }
+        return proven;
+    }
+
+    // The number of children of a node with that many visits that selection may choose from
+    private int width(int visits) {
+        if (wideningFactor <= 0)
+            return FIXED_WIDTH;
+        return Math.max(1, (int) Math.ceil(wideningFactor * Math.pow(visits, wideningExponent)));
+    }
+
+    // Makes more children of the node visible once it has the visits for them. The walker is at the node
+    private void widen(NodeArena tree, int node, GameSimulator walker, TimeManager clock) {
+        int count = tree.getChildCount(node);
+        if (count < tree.getChildCapacity(node) || !tree.hasChildForEveryMove(node)) {
+            int width = width(tree.getVisits(node));
+            if (width > count)
+                widenTo(tree, node, width, walker, clock);
+        }
+    }
+
+    // Makes the first width children visible, and sets up the rest of the children first if
+    // the node has too few. Returns true if more children are visible now
+    private boolean widenTo(NodeArena tree, int node, int width, GameSimulator walker, TimeManager clock) {
+        if (width > tree.getChildCapacity(node) && tree.tryAddChildren(node))
+            addChildren(tree, node, walker, clock);
+        int count = tree.getChildCount(node);
+        tree.widen(node, width);
+        return tree.getChildCount(node) > count;
+    }
+
+    // MCTS-Solver: a node that was just proven may prove its parent, and so on up the tree.
+    // A win for the player moving into a child is a loss for the player moving into the parent,
+    // as they can not stop it. The parent is a win if every move from it leads to a proven loss
+    private void propagateProof(NodeArena tree, int node) {
+        for (int current = node; tree.getParent(current) != NodeArena.NONE; current = tree.getParent(current)) {
+            int parent = tree.getParent(current);
+            if (tree.getProof(parent) != NodeArena.UNPROVEN)
+                return;
+            if (tree.getProof(current) == NodeArena.PROVEN_WIN) {
+                tree.setProof(parent, NodeArena.PROVEN_LOSS);
+                continue;
+            }
+            if (!tree.hasAllMoves(parent))
+                return;
+            for (int i = 0; i < tree.getChildCount(parent); i++)
+                if (tree.getProof(tree.getChild(parent, i)) != NodeArena.PROVEN_LOSS)
+                    return;
+            tree.setProof(parent, NodeArena.PROVEN_WIN);
         }
     }
 
    // Checks if a move would lead the opponent to a won sub-board to help evaluateBoard
     private boolean leadsToWonSubBoard(IGameState state, IMove move) {
-        String [][] macroBoard = state.getField().getMacroboard();
         int macroX = move.getX() / 3;
         int macroY = move.getY() / 3;
-        return !macroBoard[macroX][macroY].equals(IField.AVAILABLE_FIELD);
+        return state.getField().getMacroCell(macroX, macroY) != Cell.AVAILABLE;
     }
 
 
     //Checks for threats from the opponent that will lead to sub-board or macro-board wins
-    private List<IMove> getImmediateThreats(IGameState state, String opponent) {
+    private List<IMove> getImmediateThreats(IGameState state, int opponent) {
         List<IMove> threats = new ArrayList<>();
         List<IMove> availableMoves = state.getField().getAvailableMoves();
         for (IMove move : availableMoves) {
-            if (isWinningMove(state, move, opponent)) {
+            if (MicroBoardTable.isWinningMove(state.getField(), move, opponent)) {
                 threats.add(move);
             }
         }
@@ -218,276 +633,251 @@ public class MortenBoT implements IBot {
     }
 
     //Deeper analysis of future threats
-    private List<IMove> getFutureThreats(IGameState state, String opponent, int depth) {
+    // Plays the moves on the simulator and takes them back again, instead of copying the state
+    private List<IMove> getFutureThreats(GameSimulator simulator, int opponent, int depth) {
         List<IMove> futureThreats = new ArrayList<>();
         if (depth == 0) return futureThreats;
 
-        List<IMove> availableMoves = state.getField().getAvailableMoves();
+        List<IMove> availableMoves = simulator.getAvailableMoves();
         for (IMove move : availableMoves) {
-            IGameState tempState = cloneState(state);
-            updateGame(tempState, move, currentPlayer(tempState));
-            List<IMove> immediateThreats = getImmediateThreats(tempState, opponent);
+            simulator.makeMove(move.getX(), move.getY());
+            List<IMove> immediateThreats = getImmediateThreats(simulator.getCurrentState(), opponent);
             futureThreats.addAll(immediateThreats);
 
             for (IMove threat : immediateThreats) {
-                IGameState threatState = cloneState(tempState);
-                updateGame(threatState, threat, currentPlayer(threatState));
-                futureThreats.addAll(getFutureThreats(threatState, opponent, depth - 1));
+                simulator.makeMove(threat.getX(), threat.getY());
+                futureThreats.addAll(getFutureThreats(simulator, opponent, depth - 1));
+                simulator.unmakeMove();
             }
+            simulator.unmakeMove();
         }
         return futureThreats;
     }
 
-    private int evaluateThreats(IGameState state, String opponent) {
+    private int evaluateThreats(GameSimulator simulator, int opponent) {
         int score = 0;
-        List<IMove> immediateThreats = getImmediateThreats(state, opponent);
+        List<IMove> immediateThreats = getImmediateThreats(simulator.getCurrentState(), opponent);
         score -= immediateThreats.size() * 10; // Immediate threats are more severe
 
-        List<IMove> futureThreats = getFutureThreats(state, opponent, 2); // Look ahead 2 moves
+        List<IMove> futureThreats = getFutureThreats(simulator, opponent, 2); // Look ahead 2 moves
         score -= futureThreats.size() * 5; // Future threats are less severe but still important
 
         return score;
     }
 
-    private int evaluateMove(IMove move) {
-        IGameState tempState = cloneState(currentGameState);
-        updateGame(tempState, move, currentPlayer(tempState));
-        int score = evaluateBoard(tempState);
+    // Evaluates the position after the move, which has been played on the simulator.
+    // Only the part that depends on the position alone is cached, the same position
+    // can be reached by a different last move
+    private int evaluateMove(GameSimulator simulator, IMove move) {
+        IGameState tempState = simulator.getCurrentState();
+        int score = evaluatePosition(simulator);
 
         // Penalize moves that lead to a won sub-board
         if (leadsToWonSubBoard(tempState, move)) {
             score -= 50;
         }
-
-        // Evaluate threats
-        String opponent = currentPlayer(tempState) == 0 ? "1" : "0";
-        score += evaluateThreats(tempState, opponent);
-
         return score;
     }
 
-    private boolean isWinningPattern(String[][] board, String player) {
-        // Define winning patterns
-        int[][][] patterns = {
-                {{0, 0}, {0, 1}, {0, 2}},
-                {{1, 0}, {1, 1}, {1, 2}},
-                {{2, 0}, {2, 1}, {2, 2}},
-                {{0, 0}, {1, 0}, {2, 0}},
-                {{0, 1}, {1, 1}, {2, 1}},
-                {{0, 2}, {1, 2}, {2, 2}},
-                {{0, 0}, {1, 1}, {2, 2}},
-                {{0, 2}, {1, 1}, {2, 0}}
-        };
-
-        for (int[][] pattern : patterns) {
-            boolean win = true;
-            for (int[] cell : pattern) {
-                if (!board[cell[0]][cell[1]].equals(player)) {
-                    win = false;
-                    break;
-                }
-            }
-            if (win) return true;
+    private int evaluatePosition(GameSimulator simulator) {
+        IGameState tempState = simulator.getCurrentState();
+        long hash = simulator.getHash();
+        if (useTranspositions) {
+            long cached = evaluations.probe(hash);
+            if (cached != TranspositionTable.MISS)
+                return TranspositionTable.value(cached);
         }
-        return false;
-    }
+        int score = evaluateBoard(tempState);
 
-    private int countThreats(String[][] board, String player) {
-        int threats = 0;
+        // Evaluate threats
+        int opponent = 1 - GameSimulator.currentPlayer(tempState);
+        score += evaluateThreats(simulator, opponent);
 
-        for (int bx = 0; bx < 9; bx += 3) {
-            for (int by = 0; by < 9; by += 3) {
-                threats += checkLocalThreats(board, bx, by, player);
-            }
-        }
-        return threats;
+        if (useTranspositions)
+            evaluations.store(hash, TranspositionTable.packValue(score), 0);
+        return score;
     }
 
-    private int checkLocalThreats(String[][] board, int startX, int startY, String player) {
-        int localThreats = 0;
+    // The same score as before, from the stone masks instead of the String board, see IncrementalEvaluator
+    private int evaluateBoard(IGameState state) {
+        return IncrementalEvaluator.evaluateField(state.getField());
+    }
 
-        int[][][] lines = {
-                {{0, 0}, {0, 1}, {0, 2}}, {{1, 0}, {1, 1}, {1, 2}}, {{2, 0}, {2, 1}, {2, 2}}, // rows
-                {{0, 0}, {1, 0}, {2, 0}}, {{0, 1}, {1, 1}, {2, 1}}, {{0, 2}, {1, 2}, {2, 2}}, // cols
-                {{0, 0}, {1, 1}, {2, 2}}, {{0, 2}, {1, 1}, {2, 0}}  // diagonals
-        };
-        for (int[][] line : lines) {
-            int countPlayer = 0;
-            int countEmpty = 0;
-            for (int[] cell : line) {
-                String val = board[startX + cell[0]][startY + cell[1]];
-                if (val.equals(player)) countPlayer++;
-                else if (val.equals(".")) countEmpty++;
 
-            }
-            if (countPlayer == 2 && countEmpty == 1) localThreats++;
+    // Plays out on the given simulator with makeMove, and leaves the moves for the caller to take
+    // back, so getUndoDepth tells how long the playout was. The moves are written to sequence,
+    // if it is not null. The evaluator only rescores the microboard of each move
+    private int simulate(GameSimulator temp, SplittableRandom random, int[] cells, int[] sequence,
+                         IncrementalEvaluator evaluator) {
+        int totalScore = 0;
+        int length = 0;
+        IField field = temp.getCurrentState().getField();
+        evaluator.reset(field);
+        while (!temp.isTerminal()) {
+            int count = temp.getAvailableMoves(cells);
+            int cell = cells[random.nextInt(count)];
+            if (sequence != null) sequence[length++] = cell;
+            temp.makeMove(cell / 9, cell % 9);
+            evaluator.update(field, (cell / 27) * 3 + (cell % 9) / 3);
+            totalScore += evaluator.evaluate(field);
         }
-        return localThreats;
-    }
-
-    private int evaluateFutureWins(IGameState state) {
-        int score = 0;
-        String[][] macroBoard = state.getField().getMacroboard();
-        for (int x = 0; x < 3; x++) {
-            for (int y = 0; y < 3; y++) {
-                if (macroBoard[x][y].equals(IField.AVAILABLE_FIELD)) {
-                    score += 10;
-                }
-            }
+        GameOverState result = temp.getGameOver();
+        if (result == GameOverState.Win) {
+            totalScore += 10;
+        } else if (result == GameOverState.Tie) {
+            totalScore += 5;
         }
-        return score;
+        return totalScore;
     }
 
-
-    private int evaluateMacroBoardControl(IGameState state) {
-        int score = 0;
-        String[][] macroBoard = state.getField().getMacroboard();
-        for (int x = 0; x < 3; x++) {
-            for (int y = 0; y < 3; y++) {
-                if (macroBoard[x][y].equals("0")) {
-                    score += 15;
-                } else if (macroBoard[x][y].equals("1")) {
-                    score -= 15;
-                }
-            }
-        }
-        return score;
+    // Leaf parallel: one worker per thread of the common fork-join pool, and one for the searching
+    // thread, at most one per playout. Made once per search, see LeafWorker
+    private LeafWorker[] leafWorkers(GameSimulator root, SplittableRandom random, int[] path) {
+        int count = Math.min(leafBatch, ForkJoinPool.getCommonPoolParallelism() + 1);
+        LeafWorker[] workers = new LeafWorker[count];
+        for (int i = 0; i < count; i++)
+            workers[i] = new LeafWorker(root.copy(), random.split(), leafBatch / count + (i < leafBatch % count ? 1 : 0), path);
+        return workers;
     }
 
-    //Tries to combo moves together to create a winning sub-board
-    private int countComboMoves(String[][] board, String player) {
-        int combos = 0;
-        int[][][] comboPatterns = {
-                {{0, 0}, {0, 1}}, {{0, 0}, {1, 0}}, {{0, 0}, {1, 1}}, // Top-left corner
-                {{0, 2}, {0, 1}}, {{0, 2}, {1, 2}}, {{0, 2}, {1, 1}}, // Top-right corner
-                {{2, 0}, {1, 0}}, {{2, 0}, {2, 1}}, {{2, 0}, {1, 1}}, // Bottom-left corner
-                {{2, 2}, {1, 2}}, {{2, 2}, {2, 1}}, {{2, 2}, {1, 1}}  // Bottom-right corner
-        };
-
-        for (int bx = 0; bx < 9; bx += 3) {
-            for (int by = 0; by < 9; by += 3) {
-                for (int[][] pattern : comboPatterns) {
-                    int countPlayer = 0;
-                    int countEmpty = 0;
-                    for (int[] cell : pattern) {
-                        String val = board[bx + cell[0]][by + cell[1]];
-                        if (val.equals(player)) countPlayer++;
-                        else if (val.equals(".")) countEmpty++;
-                    }
-                    if (countPlayer == 1 && countEmpty == 1) combos++;
-                }
-            }
+    // Runs leafBatch playouts from the leaf at once in the common fork-join pool (this thread runs
+    // one of the workers) and returns the sum of their results
+    private long simulateBatch(LeafWorker[] workers, NodeArena tree, int leaf, int[] path) {
+        int depth = 0;
+        for (int node = leaf; tree.getParent(node) != NodeArena.NONE; node = tree.getParent(node))
+            depth++;
+        for (int node = leaf, i = depth; tree.getParent(node) != NodeArena.NONE; node = tree.getParent(node))
+            path[--i] = tree.getMove(node);
+        for (LeafWorker worker : workers) {
+            worker.reinitialize();
+            worker.pathLength = depth;
         }
-        return combos;
+        ForkJoinTask.invokeAll(workers);
+        long total = 0;
+        for (LeafWorker worker : workers)
+            total += worker.total;
+        return total;
     }
 
+    // Plays its share of a batch on its own simulator, which stays at the root between batches.
+    // It follows the path (root to leaf) down with makeMove, plays every playout with makeMove
+    // and takes it back, and goes back up again, so a batch allocates nothing
+    private final class LeafWorker extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final GameSimulator simulator;
+        private final SplittableRandom random;
+        private final int playouts;
+        private final int[] path; // Shared with the searching thread, which fills it in before every batch
+        private final int[] cells = new int[81];
+        private final IncrementalEvaluator evaluator = new IncrementalEvaluator();
+        private int pathLength = 0;
+        private long total = 0;
+
+        private LeafWorker(GameSimulator simulator, SplittableRandom random, int playouts, int[] path) {
+            this.simulator = simulator;
+            this.random = random;
+            this.playouts = playouts;
+            this.path = path;
+        }
 
-
-    private int evaluateBoard(IGameState state) {
-        int score = 0;
-        score += evaluateMacroBoardControl(state);
-        score += evaluateFutureWins(state);
-        String[][] board = state.getField().getBoard();
-        String[][] macroBoard = state.getField().getMacroboard();
-
-        // Check for winning patterns
-        if (isWinningPattern(board, "0")) score += 20;
-        if (isWinningPattern(board, "1")) score -= 20;
-
-        // Evaluate positions
-        int[][] positionValues = {
-                {3, 2, 3, 2, 3, 2, 3, 2, 3},
-                {2, 2, 2, 4, 2, 4, 2, 2, 2},
-                {3, 2, 3, 2, 3, 2, 3, 2, 3},
-                {2, 4, 2, 5, 3, 5, 2, 4, 2},
-                {3, 2, 3, 3, 1, 3, 3, 2, 3},
-                {2, 4, 2, 5, 3, 5, 2, 4, 2},
-                {3, 2, 3, 2, 3, 2, 3, 2, 3},
-                {2, 2, 2, 4, 2, 4, 2, 2, 2},
-                {3, 2, 3, 2, 3, 2, 3, 2, 3}
-        };
-
-        for (int x = 0; x < 9; x++) {
-            for (int y = 0; y < 9; y++) {
-                if (board[x][y].equals("0")) {
-                    score += positionValues[x][y];
-                } else if (board[x][y].equals("1")) {
-                    score -= positionValues[x][y];
-                }
+        @Override
+        protected void compute() {
+            for (int i = 0; i < pathLength; i++)
+                simulator.makeMove(path[i] / 9, path[i] % 9);
+            total = 0;
+            for (int i = 0; i < playouts; i++) {
+                total += simulate(simulator, random, cells, null, evaluator);
+                while (simulator.getUndoDepth() > pathLength)
+                    simulator.unmakeMove();
+            }
+            while (simulator.unmakeMove()) {
+                // Back to the root
             }
         }
+    }
 
-        //Evaluate threats
-        score += 10 * countThreats(board, "0");
-        score -= 10 * countThreats(board, "1");
-
-        //Evaluate combos
-        score += 3 * countComboMoves(board, "0");
-        score -= 3 * countComboMoves(board, "1");
-
-        // Bonus for controlling the center of the macroboard
-        if (macroBoard != null) {
-            String center = macroBoard[1][1];
-            if (center.equals("0")) score += 50;
-            else if (center.equals("1")) score -= 50;
-
-            // Bonus for potential wins on the macroboard
-            for (int i = 0; i < 3; i++) {
-                if (macroBoard[i][0].equals("0") && macroBoard[i][1].equals("0") && macroBoard[i][2].equals(IField.AVAILABLE_FIELD)) score += 30;
-                if (macroBoard[0][i].equals("0") && macroBoard[1][i].equals("0") && macroBoard[2][i].equals(IField.AVAILABLE_FIELD)) score += 30;
-                if (macroBoard[i][0].equals("1") && macroBoard[i][1].equals("1") && macroBoard[i][2].equals(IField.AVAILABLE_FIELD)) score -= 30;
-                if (macroBoard[0][i].equals("1") && macroBoard[1][i].equals("1") && macroBoard[2][i].equals(IField.AVAILABLE_FIELD)) score -= 30;
+    //MCTS
+    // One visit per node was already counted on the way down, see addVirtualLoss
+    private void backpropagate(NodeArena tree, int node, double result, int playouts, double virtualLoss) {
+        for (int current = node; current != NodeArena.NONE; current = tree.getParent(current)) {
+            if (playouts > 1)
+                tree.addVisits(current, playouts - 1);
+            tree.addValue(current, result + virtualLoss);
+            if (useTranspositions) {
+                int visits = tree.getVisits(current);
+                statistics.store(tree.getHash(current), TranspositionTable.packStats(visits, (float) (tree.getValue(current) / visits)),
+                        32 - Integer.numberOfLeadingZeros(visits));
             }
-            if (macroBoard[0][0].equals("0") && macroBoard[1][1].equals("0") && macroBoard[2][2].equals(IField.AVAILABLE_FIELD)) score += 30;
-            if (macroBoard[0][2].equals("0") && macroBoard[1][1].equals("0") && macroBoard[2][0].equals(IField.AVAILABLE_FIELD)) score += 30;
-            if (macroBoard[0][0].equals("1") && macroBoard[1][1].equals("1") && macroBoard[2][2].equals(IField.AVAILABLE_FIELD)) score -= 30;
-            if (macroBoard[0][2].equals("1") && macroBoard[1][1].equals("1") && macroBoard[2][0].equals(IField.AVAILABLE_FIELD)) score -= 30;
         }
-
-        return score;
     }
 
 
-    private int simulate(IGameState simState) {
-        IGameState temp = cloneState(simState);
-        int totalScore = 0;
-        while (!isTerminal(temp)) {
-            List<IMove> moves = temp.getField().getAvailableMoves();
-            if (moves.isEmpty()) break;
-            IMove move = moves.get(rnd.nextInt(moves.size()));
-            updateGame(temp, move, currentPlayer(temp));
-            totalScore += evaluateBoard(temp);
-        }
-        GameOverState result = gameOver(temp);
-        if (result == GameOverState.Win) {
-            totalScore += 10;
-        } else if (result == GameOverState.Tie) {
-            totalScore += 5;
+    // RAVE: every node on the path learns about the moves its player made later on, in the tree
+    // or in the playout, through the all-moves-as-first statistics of its children for those moves.
+    // Each cell is played at most once in a game, so playedAt (indexed by cell) gives the one time
+    // it was played. Both buffers belong to the calling thread, and playedAt is left all -1 again
+    private void updateAmaf(NodeArena tree, int leaf, int[] sequence, int playoutLength, double result, int[] playedAt) {
+        int depth = 0;
+        for (int node = leaf; tree.getParent(node) != NodeArena.NONE; node = tree.getParent(node))
+            depth++;
+        // The moves from the root down to the leaf go in front of the playout moves
+        System.arraycopy(sequence, 0, sequence, depth, playoutLength);
+        int index = depth;
+        for (int node = leaf; tree.getParent(node) != NodeArena.NONE; node = tree.getParent(node))
+            sequence[--index] = tree.getMove(node);
+        int length = depth + playoutLength;
+        for (int i = 0; i < length; i++)
+            playedAt[sequence[i]] = i;
+
+        // The node at depth d is the position after the first d moves, and its player makes moves d, d + 2, ...
+        int d = depth;
+        for (int node = leaf; node != NodeArena.NONE; node = tree.getParent(node), d--) {
+            // Children that are set up but not visible yet learn too, so they start with AMAF statistics
+            int end = tree.getChildCount(node) > 0 ? tree.getChildCapacity(node) : 0;
+            for (int i = 0; i < end; i++) {
+                int child = tree.getChild(node, i);
+                int at = playedAt[tree.getMove(child)];
+                if (at >= d && ((at - d) & 1) == 0)
+                    tree.addAmaf(child, result);
+            }
         }
-        return totalScore;
+        for (int i = 0; i < length; i++)
+            playedAt[sequence[i]] = -1;
     }
 
-    //MCTS
-    private void backpropagate(Node node, int result) {
-        Node current = node;
-        while (current != null) {
-            current.visits++;
-            current.score += result;
-            current = current.parent;
-        }
+    // Counts the visit before the playout, and with more than one thread also a loss,
+    // that backpropagate takes back again
+    private void addVirtualLoss(NodeArena tree, int node, double virtualLoss) {
+        tree.addVisits(node, 1);
+        if (virtualLoss != 0)
+            tree.addValue(node, -virtualLoss);
     }
 
-
-    private Node bestChild(Node node) {
+    // A proven win is played at once, and proven losses only if there is nothing else
+    private int bestChild(NodeArena tree, int node) {
         double bestScore = Double.NEGATIVE_INFINITY;
-        Node best = null;
-        for (Node child : node.children) {
-            double avg = child.score / (child.visits + 1e-6);
+        int best = NodeArena.NONE;
+        int count = tree.getChildCount(node);
+        for (int i = 0; i < count; i++) {
+            int child = tree.getChild(node, i);
+            if (tree.getProof(child) == NodeArena.PROVEN_WIN)
+                return child;
+            if (tree.getProof(child) == NodeArena.PROVEN_LOSS)
+                continue;
+            double avg = tree.getValue(child) / (tree.getVisits(child) + 1e-6);
             if (avg > bestScore) {
                 bestScore = avg;
                 best = child;
             }
         }
+        if (best == NodeArena.NONE) {
+            for (int i = 0; i < count; i++) {
+                int child = tree.getChild(node, i);
+                if (best == NodeArena.NONE || tree.getVisits(child) > tree.getVisits(best))
+                    best = child;
+            }
+        }
         return best;
     }
 
@@ -502,14 +892,28 @@ public class MortenBoT implements IBot {
         }
     }
 
-    private Node bestUCTChild(List<Node> children, double parentVisits, IGameState state, double alpha, double beta) {
-        Node best = null;
+    private int bestUCTChild(NodeArena tree, int node, IGameState state, double alpha, double beta) {
+        int best = NodeArena.NONE;
         double bestValue = Double.NEGATIVE_INFINITY;
         double explorationConstant = getDynamicExplorationConstant(state);
-        for (Node c : children) {
-            double heuristicValue = evaluateBoard(c.state);
-            double uctValue = (c.score / (c.visits + 1e-6))
-                    + explorationConstant * Math.sqrt(Math.log(parentVisits + 1e-6) / (c.visits + 1e-6))
+        double parentVisits = tree.getVisits(node);
+        int count = tree.getChildCount(node);
+        for (int i = 0; i < count; i++) {
+            int c = tree.getChild(node, i);
+            if (tree.getProof(c) == NodeArena.PROVEN_LOSS) {
+                continue; // Never worth playing again
+            }
+            double heuristicValue = tree.getHeuristic(c);
+            double visits = tree.getVisits(c);
+            double mean = tree.getValue(c) / (visits + 1e-6);
+            int amafVisits = tree.getAmafVisits(c);
+            if (raveEquivalence > 0 && amafVisits > 0) {
+                // Leans on the AMAF mean while the node has few visits, less and less as they grow
+                double raveBeta = Math.sqrt(raveEquivalence / (3 * parentVisits + raveEquivalence));
+                mean = (1 - raveBeta) * mean + raveBeta * tree.getAmafValue(c) / amafVisits;
+            }
+            double uctValue = mean
+                    + explorationConstant * Math.sqrt(Math.log(parentVisits + 1e-6) / (visits + 1e-6))
                     + heuristicValue;
             if (uctValue > bestValue) {
                 bestValue = uctValue;
@@ -529,184 +933,148 @@ public class MortenBoT implements IBot {
         return moves.get(rnd.nextInt(moves.size()));
     }
 
-    private static boolean isTerminal(IGameState state) {
-        return state.getField().getAvailableMoves().isEmpty() || gameOver(state) != GameOverState.Active;
+    @Override
+    public String getBotName() {
+        return BOT_NAME;
     }
 
-    // Modified gameOver now checks for a win on the macroboard.
-    private static GameOverState gameOver(IGameState state) {
-        String[][] macroBoard = state.getField().getMacroboard();
-        if (isWin(macroBoard, "0") || isWin(macroBoard, "1")) {
-            return GameOverState.Win;
-        }
-        // Tie detection can be expanded as needed.
-        return GameOverState.Active;
+    /**
+     * Turns the transposition tables of this instance on or off (on by default).
+     */
+    public void setUseTranspositions(boolean useTranspositions) {
+        this.useTranspositions = useTranspositions;
     }
 
-    // Check if the 3x3 macroboard has three in a row for the given player.
-    private static boolean isWin(String[][] board, String player) {
-        // check rows and columns
-        for (int i = 0; i < 3; i++) {
-            if (board[i][0].equals(player) && board[i][1].equals(player) && board[i][2].equals(player))
-                return true;
-            if (board[0][i].equals(player) && board[1][i].equals(player) && board[2][i].equals(player))
-                return true;
-        }
-        // check diagonals
-        if (board[0][0].equals(player) && board[1][1].equals(player) && board[2][2].equals(player))
-            return true;
-        if (board[0][2].equals(player) && board[1][1].equals(player) && board[2][0].equals(player))
-            return true;
-        return false;
+    /**
+     * Sets the number of threads that search the tree together (1 by default).
+     * The threads share the tree and use virtual loss to spread out over its branches.
+     */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
     }
 
-    // Modified updateGame also updates the macroboard.
-    private void updateGame(IGameState state, IMove move, int player) {
-        if (move == null) return;
-        state.getField().getBoard()[move.getX()][move.getY()] = String.valueOf(player);
-        state.setMoveNumber(state.getMoveNumber() + 1);
-        updateMacroboard(state, move, player);
+    public int getThreads() {
+        return threads;
     }
 
-    // Update the macroboard based on the move.
-    private void updateMacroboard(IGameState state, IMove move, int player) {
-        // Assume state.getField().getMacroboard() returns a 3x3 String array.
-        String[][] macroBoard = state.getField().getMacroboard();
-        int macroX = move.getX() / 3;
-        int macroY = move.getY() / 3;
-        // If the microboard corresponding to the move is not yet decided, check for a win.
-        if (macroBoard[macroX][macroY].equals(IField.EMPTY_FIELD) ||
-                macroBoard[macroX][macroY].equals(IField.AVAILABLE_FIELD)) {
-            String[][] board = state.getField().getBoard();
-            if (isLocalWin(board, move, String.valueOf(player))) {
-                macroBoard[macroX][macroY] = String.valueOf(player);
-            }
-        }
-        // Update available fields: if target macroboard cell is already won, set all empty cells to available.
-        int xTrans = move.getX() % 3;
-        int yTrans = move.getY() % 3;
-        if (macroBoard[xTrans][yTrans].equals(IField.EMPTY_FIELD)) {
-            macroBoard[xTrans][yTrans] = IField.AVAILABLE_FIELD;
-        } else {
-            for (int i = 0; i < 3; i++) {
-                for (int j = 0; j < 3; j++) {
-                    if (macroBoard[i][j].equals(IField.EMPTY_FIELD))
-                        macroBoard[i][j] = IField.AVAILABLE_FIELD;
-                }
-            }
-        }
+    /**
+     * With more than one thread, gives every thread its own tree and merges the statistics
+     * of the root moves at the deadline, instead of sharing one tree (off by default).
+     * See RootParallelSearch.
+     */
+    public void setRootParallel(boolean rootParallel) {
+        this.rootParallel = rootParallel;
     }
 
-    // Check a local 3x3 microboard win for the move.
-    private boolean isLocalWin(String[][] board, IMove move, String player) {
-        int localX = move.getX() % 3;
-        int localY = move.getY() % 3;
-        int startX = move.getX() - localX;
-        int startY = move.getY() - localY;
+    /**
+     * Keeps the subtree below the move played and continues from it next time,
+     * if the opponent's reply is in it (on by default).
+     */
+    public void setReuseTree(boolean reuseTree) {
+        this.reuseTree = reuseTree;
+    }
 
-        // check row
-        boolean win = true;
-        for (int i = startX; i < startX + 3; i++) {
-            if (!board[i][move.getY()].equals(player)) {
-                win = false;
-                break;
-            }
-        }
-        if (win) return true;
-        // check column
-        win = true;
-        for (int i = startY; i < startY + 3; i++) {
-            if (!board[move.getX()][i].equals(player)) {
-                win = false;
-                break;
-            }
-        }
-        if (win) return true;
-        // check diagonal
-        if (localX == localY) {
-            win = true;
-            int y = startY;
-            for (int i = startX; i < startX + 3; i++) {
-                if (!board[i][y++].equals(player)) {
-                    win = false;
-                    break;
-                }
-            }
-            if (win) return true;
-        }
-        // check anti-diagonal
-        if (localX + localY == 2) {
-            win = true;
-            int y = startY + 2;
-            for (int i = startX; i < startX + 3; i++) {
-                if (!board[i][y--].equals(player)) {
-                    win = false;
-                    break;
-                }
-            }
-            if (win) return true;
-        }
-        return false;
+    /**
+     * @return The visits the latest doMove started with from the previous search
+     */
+    public int getLastRetainedVisits() {
+        return lastRetainedVisits;
     }
 
-    private int currentPlayer(IGameState state) {
-        return state.getMoveNumber() % 2;
+    @Override
+    public long getLastPonderMs() {
+        return lastPonderMs;
     }
 
-    // This cloneState should perform a deep copy of the state.
-    private IGameState cloneState(IGameState original) {
-        // Assume that your concrete GameState class has a no-arg constructor.
-        IGameState clone = new GameState();
+    /**
+     * Solves positions with at most this many playable cells exactly before searching
+     * (20 by default, 0 turns it off). See EndgameSolver.getPlayableCells.
+     */
+    public void setEndgameThreshold(int endgameThreshold) {
+        this.endgameThreshold = endgameThreshold;
+    }
 
-        // Deep clone the board.
-        String[][] originalBoard = original.getField().getBoard();
-        String[][] cloneBoard = new String[originalBoard.length][];
-        for (int i = 0; i < originalBoard.length; i++) {
-            cloneBoard[i] = originalBoard[i].clone();
-        }
-        clone.getField().setBoard(cloneBoard);
+    public int getEndgameThreshold() {
+        return endgameThreshold;
+    }
 
-        // Deep clone the macroboard if it exists.
-        String[][] originalMacro = original.getField().getMacroboard();
-        if (originalMacro != null) {
-            String[][] cloneMacro = new String[originalMacro.length][];
-            for (int i = 0; i < originalMacro.length; i++) {
-                cloneMacro[i] = originalMacro[i].clone();
-            }
-            clone.getField().setMacroboard(cloneMacro);
-        }
+    /**
+     * @return EndgameSolver.WIN, DRAW or LOSS if the latest doMove solved the position, otherwise 2
+     */
+    public int getLastSolverResult() {
+        return lastSolverResult;
+    }
 
-        // Copy the move number.
-        clone.setMoveNumber(original.getMoveNumber());
+    /**
+     * @return NodeArena.PROVEN_WIN or PROVEN_LOSS if the latest search proved the result
+     * for this bot (and stopped early), otherwise UNPROVEN
+     */
+    public int getLastProof() {
+        return lastProof;
+    }
 
-        // Extend cloning for any other fields if needed.
-        return clone;
+    /**
+     * Turns on RAVE (off by default): selection blends in all-moves-as-first statistics,
+     * with weight sqrt(k / (3n + k)) for a node with n visits.
+     * @param equivalence k, the visits at which both count about the same. 0 turns RAVE off
+     */
+    public void setRaveEquivalence(double equivalence) {
+        this.raveEquivalence = Math.max(0, equivalence);
     }
 
-    @Override
-    public String getBotName() {
-        return BOT_NAME;
+    public double getRaveEquivalence() {
+        return raveEquivalence;
     }
 
-    // Node class for MCTS
-    private static class Node {
-        IMove move;
-        IGameState state;
-        Node parent;
-        List<Node> children = new ArrayList<>();
-        double score = 0;
-        double visits = 0;
+    /**
+     * Sets progressive widening (k = 2, alpha = 0.4 by default): the moves of an expanded node
+     * are put in order of evaluateMove, and selection chooses among the best
+     * ceil(k * n^alpha) of them for a node with n visits, so every move is searched in the end.
+     * @param factor k. 0 or less turns widening off: only the best 5 moves are searched, unless they all lose
+     * @param exponent alpha, between 0 and 1
+     */
+    public void setWidening(double factor, double exponent) {
+        this.wideningFactor = factor;
+        this.wideningExponent = exponent;
+    }
 
-        Node(IMove move, IGameState state, Node parent) {
-            this.move = move;
-            this.state = state;
-            this.parent = parent;
-        }
+    /**
+     * Runs exactly this many iterations per searching thread instead of searching for
+     * the move time, e.g. for comparing settings at equal effort. 0 (the default) uses the time.
+     */
+    public void setIterationLimit(int iterationLimit) {
+        this.iterationLimit = Math.max(0, iterationLimit);
+    }
+
+    /**
+     * Sets the number of playouts run at once from every leaf (1 by default). The playouts
+     * run in the common fork-join pool, and their results are backpropagated together.
+     */
+    public void setLeafBatch(int leafBatch) {
+        this.leafBatch = Math.max(1, leafBatch);
+    }
+
+    /**
+     * Lets you look at the state of every node the search creates, e.g. for statistics.
+     * With more than one thread, the listener is called from all of them.
+     * @param nodeListener Called once per node, or null to turn it off. The state is only valid during the call
+     */
+    public void setNodeListener(Consumer<IGameState> nodeListener) {
+        this.nodeListener = nodeListener;
+    }
+
+    /**
+     * @return The number of MCTS iterations the latest doMove managed
+     */
+    public int getLastIterations() {
+        return lastIterations;
+    }
+
+    public TranspositionTable getStatisticsTable() {
+        return statistics;
     }
 
-    public enum GameOverState {
-        Active,
-        Win,
-        Tie
+    public TranspositionTable getEvaluationTable() {
+        return evaluations;
     }
 }
\ No newline at end of file
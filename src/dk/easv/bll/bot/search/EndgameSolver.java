@@ -0,0 +1,177 @@
+package dk.easv.bll.bot.search;
+
+import dk.easv.bll.field.IField;
+import dk.easv.bll.game.GameManager.GameOverState;
+import dk.easv.bll.game.GameSimulator;
+import dk.easv.bll.game.RulesTable;
+
+/**
+ * Solves a position exactly: win, draw or loss for the player to move, with a best move.
+ *
+ * The solver is an alpha-beta search over the three results only, so it cuts off as
+ * soon as a win is found and needs no evaluation. Solved positions are kept in a
+ * TranspositionTable, and moves that win the game or a microboard are tried first.
+ * It is only practical late in the game: see getPlayableCells for the usual measure
+ * of how much is left, and the deadline given to solve for giving up.
+ *
+ * A solver keeps a move buffer per ply, so use one solver per thread.
+ */
+public final class EndgameSolver {
+
+    public static final int WIN = 1;
+    public static final int DRAW = 0;
+    public static final int LOSS = -1;
+
+    // Results are stored with this depth, so they are kept before any search results
+    private static final int SOLVED_DEPTH = 255;
+    private static final int CHECK_INTERVAL = 1024 - 1;
+
+    private final TranspositionTable table;
+    private final int[][] moves = new int[82][81];
+    private GameSimulator simulator;
+    private long deadline;
+    private boolean aborted;
+    private long nodes;
+
+    private int result = DRAW;
+    private int bestMove = TranspositionTable.NO_MOVE;
+
+    /**
+     * @param table Where solved positions are kept. Do not share it with searches that store other values
+     */
+    public EndgameSolver(TranspositionTable table) {
+        this.table = table;
+    }
+
+    /**
+     * @param field The position
+     * @return The empty cells in the microboards that are not decided, an upper bound on the moves left in the game
+     */
+    public static int getPlayableCells(IField field) {
+        int decided = field.getWonMask(0) | field.getWonMask(1) | field.getTiedMask();
+        int cells = 0;
+        for (int micro = 0; micro < 9; micro++)
+            if ((decided & (1 << micro)) == 0)
+                cells += 9 - Integer.bitCount(field.getOccupied(micro));
+        return cells;
+    }
+
+    /**
+     * Solves the position of the simulator. It is played on with makeMove and is
+     * back where it was when this returns.
+     * @param deadline System.nanoTime() to give up at
+     * @return true if the position was solved, see getResult and getBestMove
+     */
+    public boolean solve(GameSimulator simulator, long deadline) {
+        this.simulator = simulator;
+        this.deadline = deadline;
+        aborted = false;
+        nodes = 0;
+        bestMove = TranspositionTable.NO_MOVE;
+        result = solve(LOSS, WIN, 0);
+        this.simulator = null;
+        return !aborted && (bestMove != TranspositionTable.NO_MOVE || simulator.isTerminal());
+    }
+
+    private int solve(int alpha, int beta, int ply) {
+        if ((++nodes & CHECK_INTERVAL) == 0 && System.nanoTime() - deadline >= 0)
+            aborted = true;
+        if (aborted)
+            return DRAW;
+        if (simulator.getGameOver() == GameOverState.Win)
+            return LOSS; // The player who just moved won
+        if (simulator.isTerminal())
+            return DRAW;
+
+        long hash = simulator.getHash();
+        int tableMove = TranspositionTable.NO_MOVE;
+        long entry = table.probe(hash);
+        if (entry != TranspositionTable.MISS) {
+            tableMove = TranspositionTable.searchMove(entry);
+            int value = TranspositionTable.searchValue(entry);
+            int bound = TranspositionTable.searchBound(entry);
+            if (ply > 0 && (bound == TranspositionTable.EXACT
+                    || (bound == TranspositionTable.LOWER && value >= beta)
+                    || (bound == TranspositionTable.UPPER && value <= alpha)))
+                return value;
+        }
+
+        int[] cells = moves[ply];
+        int count = simulator.getAvailableMoves(cells);
+        orderMoves(cells, count, tableMove);
+        int alphaStart = alpha;
+        int best = LOSS - 1;
+        int move = TranspositionTable.NO_MOVE;
+        for (int i = 0; i < count; i++) {
+            int cell = cells[i];
+            simulator.makeMove(cell / 9, cell % 9);
+            int value = -solve(-beta, -alpha, ply + 1);
+            simulator.unmakeMove();
+            if (aborted)
+                return DRAW;
+            if (value > best) {
+                best = value;
+                move = cell;
+            }
+            if (value > alpha)
+                alpha = value;
+            if (alpha >= beta)
+                break;
+        }
+
+        if (ply == 0)
+            bestMove = move;
+        int bound = best <= alphaStart ? TranspositionTable.UPPER
+                : best >= beta ? TranspositionTable.LOWER : TranspositionTable.EXACT;
+        table.store(hash, TranspositionTable.packSearch(best, bound, move, SOLVED_DEPTH), SOLVED_DEPTH);
+        return best;
+    }
+
+    /**
+     * Moves the table move to the front, followed by moves that win a microboard.
+     */
+    private void orderMoves(int[] cells, int count, int tableMove) {
+        IField field = simulator.getCurrentState().getField();
+        int player = simulator.getCurrentPlayer();
+        int decided = field.getWonMask(0) | field.getWonMask(1) | field.getTiedMask();
+        int front = 0;
+        for (int i = 0; i < count; i++) {
+            int x = cells[i] / 9;
+            int y = cells[i] % 9;
+            int micro = (x / 3) * 3 + y / 3;
+            if ((decided & (1 << micro)) == 0
+                    && (RulesTable.threats(field.getStones(player, micro)) & RulesTable.cellBit(x, y)) != 0)
+                swap(cells, i, front++);
+        }
+        for (int i = 0; i < count; i++)
+            if (cells[i] == tableMove)
+                swap(cells, i, 0);
+    }
+
+    private static void swap(int[] cells, int i, int j) {
+        int cell = cells[i];
+        cells[i] = cells[j];
+        cells[j] = cell;
+    }
+
+    /**
+     * @return WIN, DRAW or LOSS for the player to move, if the latest solve succeeded
+     */
+    public int getResult() {
+        return result;
+    }
+
+    /**
+     * @return The cell index x*9 + y of a move that reaches the result, if the latest solve succeeded
+     */
+    public int getBestMove() {
+        return bestMove;
+    }
+
+    /**
+     * @return The nodes visited by the latest solve
+     */
+    public long getNodes() {
+        return nodes;
+    }
+}
@@ -0,0 +1,135 @@
+package dk.easv.bll.bot.search;
+
+import dk.easv.bll.field.IField;
+import dk.easv.bll.game.MicroBoardTable;
+
+/**
+ * MortenBoT's board evaluation, worked out from the stone masks of the field and kept
+ * up to date move by move.
+ *
+ * The score is a sum over the microboards (stone values, local threats and combos), which
+ * only change in the microboard a move is made in, plus a macroboard part (control, open
+ * boards, center and two-in-a-row) which is a few bit operations on the macroboard masks.
+ * So after reset, a playout calls update with the microboard of every move (made or taken
+ * back) and evaluate is constant time. A microboard's threats and combos come from
+ * MicroBoardTable, and its stone values from a table per microboard, so rescoring it
+ * is two lookups. Positive scores are good for player 0.
+ *
+ * An evaluator keeps the scores of one position, so use one per playout thread.
+ */
+public final class IncrementalEvaluator {
+
+    // Indexed by cell x*9 + y
+    private static final int[] CELL_VALUES = {
+            3, 2, 3, 2, 3, 2, 3, 2, 3,
+            2, 2, 2, 4, 2, 4, 2, 2, 2,
+            3, 2, 3, 2, 3, 2, 3, 2, 3,
+            2, 4, 2, 5, 3, 5, 2, 4, 2,
+            3, 2, 3, 3, 1, 3, 3, 2, 3,
+            2, 4, 2, 5, 3, 5, 2, 4, 2,
+            3, 2, 3, 2, 3, 2, 3, 2, 3,
+            2, 2, 2, 4, 2, 4, 2, 2, 2,
+            3, 2, 3, 2, 3, 2, 3, 2, 3
+    };
+    private static final int CORNER_WIN = 20; // Only the microboard in the corner (0, 0) counts
+    private static final int MACRO_CONTROL = 15;
+    private static final int OPEN_BOARD = 10;
+    private static final int MACRO_CENTER = 50;
+    private static final int MACRO_TWO = 30;
+    // Macroboard triples: the two that must be won and the third that must be open
+    private static final int[][] MACRO_TWOS = {
+            {0, 1, 2}, {3, 4, 5}, {6, 7, 8}, // x fixed
+            {0, 3, 6}, {1, 4, 7}, {2, 5, 8}, // y fixed
+            {0, 4, 8}, {2, 4, 6}             // diagonals
+    };
+
+    // The sum of CELL_VALUES over the stones of a mask, indexed by microboard * 512 + mask
+    private static final short[] STONE_VALUES = new short[9 * 512];
+
+    static {
+        for (int micro = 0; micro < 9; micro++) {
+            int first = (micro / 3) * 27 + (micro % 3) * 3; // Cell index of the microboard's (0, 0)
+            for (int mask = 0; mask < 512; mask++) {
+                int value = 0;
+                for (int bit = 0; bit < 9; bit++)
+                    if ((mask & (1 << bit)) != 0)
+                        value += CELL_VALUES[first + (bit / 3) * 9 + bit % 3];
+                STONE_VALUES[micro * 512 + mask] = (short) value;
+            }
+        }
+    }
+
+    private final int[] microScores = new int[9];
+    private int microTotal = 0;
+
+    /**
+     * Works out the microboard scores of the field from scratch.
+     */
+    public void reset(IField field) {
+        microTotal = 0;
+        for (int micro = 0; micro < 9; micro++) {
+            microScores[micro] = microScore(micro, field.getStones(0, micro), field.getStones(1, micro));
+            microTotal += microScores[micro];
+        }
+    }
+
+    /**
+     * Brings the score of one microboard up to date, after a move was made or taken back in it.
+     * @param micro Microboard index (x/3)*3 + (y/3)
+     */
+    public void update(IField field, int micro) {
+        int score = microScore(micro, field.getStones(0, micro), field.getStones(1, micro));
+        microTotal += score - microScores[micro];
+        microScores[micro] = score;
+    }
+
+    /**
+     * @return The score of the field, which must be the one the evaluator was last brought up to date with
+     */
+    public int evaluate(IField field) {
+        return microTotal + macroScore(field.getWonMask(0), field.getWonMask(1), field.getActiveMask());
+    }
+
+    /**
+     * Evaluates a field from scratch, without an evaluator.
+     */
+    public static int evaluateField(IField field) {
+        int score = 0;
+        for (int micro = 0; micro < 9; micro++)
+            score += microScore(micro, field.getStones(0, micro), field.getStones(1, micro));
+        return score + macroScore(field.getWonMask(0), field.getWonMask(1), field.getActiveMask());
+    }
+
+    /**
+     * @return The part of the score that comes from one microboard
+     */
+    public static int microScore(int micro, int stones0, int stones1) {
+        int index = MicroBoardTable.index(stones0, stones1);
+        int score = STONE_VALUES[micro * 512 + stones0] - STONE_VALUES[micro * 512 + stones1]
+                + MicroBoardTable.heuristic(index);
+        if (micro == 0) {
+            int status = MicroBoardTable.status(index);
+            if (status == MicroBoardTable.WIN_0) score += CORNER_WIN;
+            else if (status == MicroBoardTable.WIN_1) score -= CORNER_WIN;
+        }
+        return score;
+    }
+
+    /**
+     * @return The part of the score that comes from the macroboard
+     */
+    public static int macroScore(int won0, int won1, int active) {
+        int score = MACRO_CONTROL * (Integer.bitCount(won0) - Integer.bitCount(won1))
+                + OPEN_BOARD * Integer.bitCount(active);
+        if ((won0 & (1 << 4)) != 0) score += MACRO_CENTER;
+        else if ((won1 & (1 << 4)) != 0) score -= MACRO_CENTER;
+        for (int[] two : MACRO_TWOS) {
+            if ((active & (1 << two[2])) == 0)
+                continue;
+            int pair = (1 << two[0]) | (1 << two[1]);
+            if ((won0 & pair) == pair) score += MACRO_TWO;
+            if ((won1 & pair) == pair) score -= MACRO_TWO;
+        }
+        return score;
+    }
+}
@@ -0,0 +1,387 @@
+package dk.easv.bll.bot.search;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The nodes of an MCTS tree, stored as parallel primitive arrays instead of one
+ * object per node. A node is an index; the children of a node are next to each
+ * other in at most two blocks (see below), so a node only needs the index of the
+ * first child of each block and a count. getChild finds the i-th child.
+ * Nodes hold no game state: a search walks down from the root position and
+ * plays the move of every node it passes (see getMove).
+ *
+ * The arena has a fixed capacity and is meant to be reused from one search to
+ * the next with clear, or copyTree to keep a subtree. Searching threads can share
+ * an arena: nodes are handed out atomically, visits and values are updated
+ * atomically, and the children of a node become visible all at once when they
+ * are published. Everything else about a node must be set before it is published.
+ *
+ * For progressive widening, a node can have more children set up than are visible:
+ * they are published in priority order, only the first few at first, and widen
+ * makes more of them visible later on. The children of the moves that are not
+ * visible at first need not be set up at once: the first block holds the children
+ * published with the node, and publishMoreChildren adds the rest of the moves as
+ * a second block once widening gets to them, so most nodes never take up room for them.
+ */
+public final class NodeArena {
+
+    /** Index for "no node", e.g. the parent of the root. */
+    public static final int NONE = -1;
+
+    /** Proofs, see getProof. Always from the view of the player who made the move that leads to the node. */
+    public static final int UNPROVEN = 0;
+    public static final int PROVEN_WIN = 1;
+    public static final int PROVEN_LOSS = -1;
+
+    private static final VarHandle INTS = MethodHandles.arrayElementVarHandle(int[].class);
+    private static final VarHandle DOUBLES = MethodHandles.arrayElementVarHandle(double[].class);
+    private static final VarHandle BYTES = MethodHandles.arrayElementVarHandle(byte[].class);
+
+    private static final byte TERMINAL = 1;
+    private static final byte EXPANDED = 2;
+    private static final byte ALL_MOVES = 4;
+    private static final byte ADDING_CHILDREN = 8;
+
+    private final byte[] moves;
+    private final int[] parents;
+    private final int[] firstChildren;
+    private final int[] moreChildren;
+    private final byte[] firstBlocks;
+    private final byte[] childCounts;
+    private final byte[] childCapacities;
+    private final int[] visits;
+    private final double[] values;
+    private final int[] heuristics;
+    private final long[] hashes;
+    private final byte[] flags;
+    private final byte[] proofs;
+    private final int[] amafVisits;
+    private final double[] amafValues;
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * @param capacity The most nodes the arena can hold (54 bytes each)
+     */
+    public NodeArena(int capacity) {
+        moves = new byte[capacity];
+        parents = new int[capacity];
+        firstChildren = new int[capacity];
+        moreChildren = new int[capacity];
+        firstBlocks = new byte[capacity];
+        childCounts = new byte[capacity];
+        childCapacities = new byte[capacity];
+        visits = new int[capacity];
+        values = new double[capacity];
+        heuristics = new int[capacity];
+        hashes = new long[capacity];
+        flags = new byte[capacity];
+        proofs = new byte[capacity];
+        amafVisits = new int[capacity];
+        amafValues = new double[capacity];
+    }
+
+    public int getCapacity() {
+        return moves.length;
+    }
+
+    public int getSize() {
+        return size.get();
+    }
+
+    /**
+     * Removes all nodes. The arrays are kept, so nothing is allocated.
+     */
+    public void clear() {
+        size.set(0);
+    }
+
+    /**
+     * Clears the arena and adds a root node.
+     * @return The root, which is always node 0
+     */
+    public int addRoot(long hash, boolean terminal) {
+        clear();
+        int root = allocate(1);
+        init(root, NONE, 0, hash, terminal, 0);
+        return root;
+    }
+
+    /**
+     * Hands out a block of nodes next to each other, e.g. for the children of a node.
+     * @return The first node of the block, or NONE if the arena is full
+     */
+    public int allocate(int count) {
+        int first = size.getAndAdd(count);
+        if (first + count > moves.length) {
+            size.getAndAdd(-count);
+            return NONE;
+        }
+        return first;
+    }
+
+    /**
+     * Sets up a node that was just allocated, with no visits and no children.
+     * @param move The cell index x*9 + y of the move that leads to the node
+     */
+    public void init(int node, int parent, int move, long hash, boolean terminal, int heuristic) {
+        moves[node] = (byte) move;
+        parents[node] = parent;
+        firstChildren[node] = NONE;
+        moreChildren[node] = NONE;
+        firstBlocks[node] = 0;
+        childCounts[node] = 0;
+        childCapacities[node] = 0;
+        visits[node] = 0;
+        values[node] = 0;
+        heuristics[node] = heuristic;
+        hashes[node] = hash;
+        flags[node] = terminal ? TERMINAL : 0;
+        proofs[node] = UNPROVEN;
+        amafVisits[node] = 0;
+        amafValues[node] = 0;
+    }
+
+    /**
+     * Makes the children of a node visible to the other threads, after they have all been set up.
+     * @param allMoves true if there is a child for every move, false if some moves were left out
+     */
+    public void publishChildren(int node, int firstChild, int count, boolean allMoves) {
+        publishChildren(node, firstChild, count, count, allMoves);
+    }
+
+    /**
+     * Makes the first children of a node visible to the other threads, after all of them have been set up.
+     * @param count The number of children to make visible now, see widen
+     * @param capacity The number of children that were set up, in the order they should become visible
+     * @param allMoves true if there is a child for every move, false if some moves were left out
+     *                 (they may be added later with publishMoreChildren)
+     */
+    public void publishChildren(int node, int firstChild, int count, int capacity, boolean allMoves) {
+        firstChildren[node] = firstChild;
+        firstBlocks[node] = (byte) capacity;
+        childCapacities[node] = (byte) capacity;
+        if (allMoves)
+            BYTES.getAndBitwiseOr(flags, node, ALL_MOVES);
+        BYTES.setRelease(childCounts, node, (byte) Math.min(count, capacity));
+    }
+
+    /**
+     * @return true for the one thread that gets to add the rest of the children of the node,
+     * if it was published without a child for every move
+     */
+    public boolean tryAddChildren(int node) {
+        byte old = (byte) BYTES.getVolatile(flags, node);
+        return (old & (ALL_MOVES | ADDING_CHILDREN)) == 0
+                && BYTES.compareAndSet(flags, node, old, (byte) (old | ADDING_CHILDREN));
+    }
+
+    /**
+     * Adds a second block of children after the ones the node was published with, for the rest
+     * of its moves, all set up and in the order they should become visible. None of them is
+     * visible yet, see widen. Only for the thread that got tryAddChildren.
+     */
+    public void publishMoreChildren(int node, int firstChild, int count) {
+        moreChildren[node] = firstChild;
+        BYTES.getAndBitwiseOr(flags, node, ALL_MOVES);
+        BYTES.setRelease(childCapacities, node, (byte) (firstBlocks[node] + count));
+    }
+
+    /**
+     * Makes more of the children of a node visible, if fewer than count are.
+     * The number of visible children never goes down, and never above getChildCapacity.
+     */
+    public void widen(int node, int count) {
+        int target = Math.min(count, getChildCapacity(node));
+        byte old;
+        do {
+            old = (byte) BYTES.getVolatile(childCounts, node);
+        } while (old < target && !BYTES.compareAndSet(childCounts, node, old, (byte) target));
+    }
+
+    /**
+     * @return true if the node has a visible child for every move, so it can be proven from its children
+     */
+    public boolean hasAllMoves(int node) {
+        return hasChildForEveryMove(node) && getChildCount(node) == getChildCapacity(node);
+    }
+
+    /**
+     * @return true if every move of the node has a child set up, visible or not
+     */
+    public boolean hasChildForEveryMove(int node) {
+        return ((byte) BYTES.getVolatile(flags, node) & ALL_MOVES) != 0;
+    }
+
+    /**
+     * @return true for the one thread that gets to expand the node
+     */
+    public boolean tryExpand(int node) {
+        byte old = (byte) BYTES.getVolatile(flags, node);
+        return (old & EXPANDED) == 0 && BYTES.compareAndSet(flags, node, old, (byte) (old | EXPANDED));
+    }
+
+    /**
+     * @return The number of visible children
+     */
+    public int getChildCount(int node) {
+        return (byte) BYTES.getAcquire(childCounts, node);
+    }
+
+    /**
+     * @return The number of children that were set up, visible or not. Only valid when getChildCount is above 0
+     */
+    public int getChildCapacity(int node) {
+        return (byte) BYTES.getAcquire(childCapacities, node);
+    }
+
+    /**
+     * @return The child at that place in the order the children become visible, from 0 up to
+     * getChildCapacity. Only valid when getChildCount is above 0
+     */
+    public int getChild(int node, int index) {
+        int inFirst = firstBlocks[node];
+        return index < inFirst ? firstChildren[node] + index : moreChildren[node] + index - inFirst;
+    }
+
+    public int getParent(int node) {
+        return parents[node];
+    }
+
+    /**
+     * @return The cell index x*9 + y of the move that leads to the node
+     */
+    public int getMove(int node) {
+        return moves[node];
+    }
+
+    public long getHash(int node) {
+        return hashes[node];
+    }
+
+    public boolean isTerminal(int node) {
+        return (flags[node] & TERMINAL) != 0;
+    }
+
+    public int getHeuristic(int node) {
+        return heuristics[node];
+    }
+
+    /**
+     * @return PROVEN_WIN or PROVEN_LOSS if the game is decided with best play from the node on,
+     * for the player who made the move that leads to it, otherwise UNPROVEN
+     */
+    public int getProof(int node) {
+        return (byte) BYTES.getAcquire(proofs, node);
+    }
+
+    public void setProof(int node, int proof) {
+        BYTES.setRelease(proofs, node, (byte) proof);
+    }
+
+    public int getVisits(int node) {
+        return (int) INTS.getOpaque(visits, node);
+    }
+
+    public double getValue(int node) {
+        return (double) DOUBLES.getOpaque(values, node);
+    }
+
+    public void addVisits(int node, int count) {
+        INTS.getAndAdd(visits, node, count);
+    }
+
+    public void addValue(int node, double delta) {
+        double old;
+        do {
+            old = (double) DOUBLES.getVolatile(values, node);
+        } while (!DOUBLES.compareAndSet(values, node, old, old + delta));
+    }
+
+    /**
+     * @return How often the move of the node was played later on by the same player,
+     * in the tree or in a playout, after the parent was visited (all-moves-as-first, for RAVE)
+     */
+    public int getAmafVisits(int node) {
+        return (int) INTS.getOpaque(amafVisits, node);
+    }
+
+    public double getAmafValue(int node) {
+        return (double) DOUBLES.getOpaque(amafValues, node);
+    }
+
+    /**
+     * Counts a playout in the all-moves-as-first statistics of the node.
+     */
+    public void addAmaf(int node, double result) {
+        INTS.getAndAdd(amafVisits, node, 1);
+        double old;
+        do {
+            old = (double) DOUBLES.getVolatile(amafValues, node);
+        } while (!DOUBLES.compareAndSet(amafValues, node, old, old + result));
+    }
+
+    /**
+     * Sets the statistics of a node that is not published yet, e.g. from a transposition table.
+     */
+    public void setStatistics(int node, int visits, double value) {
+        this.visits[node] = visits;
+        values[node] = value;
+    }
+
+    /**
+     * Clears the target and copies the subtree below node into it, with node as the new root.
+     * Everything else is left behind, so the arena and the target can swap places afterwards.
+     * Children that are not visible yet are copied too, and both blocks of children become one.
+     * Nodes that do not fit in the target are cut off, and their parent becomes a leaf again.
+     * @return The new root in the target, which is always node 0
+     */
+    public int copyTree(int node, NodeArena target) {
+        target.clear();
+        int root = target.allocate(1);
+        copyNode(node, target, root, NONE);
+        // Breadth first, using the target as the queue. Until a node is processed,
+        // its firstChildren entry holds the index of the node it was copied from
+        for (int copy = 0; copy < target.getSize(); copy++) {
+            int original = target.firstChildren[copy];
+            int count = childCounts[original];
+            int capacity = count == 0 ? 0 : childCapacities[original];
+            // A node that failed to add the rest of its children may try again
+            target.flags[copy] &= ~ADDING_CHILDREN;
+            int first = count == 0 ? NONE : target.allocate(capacity);
+            if (first == NONE) { // A leaf, and a node that could not be expanded may be tried again
+                target.firstChildren[copy] = NONE;
+                target.childCounts[copy] = 0;
+                target.childCapacities[copy] = 0;
+                target.flags[copy] &= ~(EXPANDED | ALL_MOVES);
+                continue;
+            }
+            for (int i = 0; i < capacity; i++)
+                copyNode(getChild(original, i), target, first + i, copy);
+            target.firstChildren[copy] = first;
+            target.firstBlocks[copy] = (byte) capacity;
+            target.childCounts[copy] = (byte) count;
+            target.childCapacities[copy] = (byte) capacity;
+        }
+        return root;
+    }
+
+    private void copyNode(int node, NodeArena target, int copy, int parent) {
+        target.moves[copy] = moves[node];
+        target.parents[copy] = parent;
+        target.firstChildren[copy] = node;
+        target.moreChildren[copy] = NONE;
+        target.firstBlocks[copy] = 0;
+        target.childCounts[copy] = 0;
+        target.childCapacities[copy] = 0;
+        target.visits[copy] = visits[node];
+        target.values[copy] = values[node];
+        target.heuristics[copy] = heuristics[node];
+        target.hashes[copy] = hashes[node];
+        target.flags[copy] = flags[node];
+        target.proofs[copy] = proofs[node];
+        target.amafVisits[copy] = amafVisits[node];
+        target.amafValues[copy] = amafValues[node];
+    }
+}
@@ -0,0 +1,78 @@
+package dk.easv.bll.bot.search;
+
+import dk.easv.bll.game.GameSimulator;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Plays games to the end, for Monte Carlo bots.
+ *
+ * A playout is played with makeMove on the given simulator and taken back
+ * again afterwards, so the same simulator can be played out any number of
+ * times without copying it, and nothing is allocated once the undo stack
+ * has grown. The moves are picked by a PlayoutPolicy.
+ *
+ * An engine has its own SplittableRandom and move buffer, so it is not
+ * thread-safe: use one engine per thread (and one simulator per thread).
+ */
+public final class PlayoutEngine {
+
+    private final PlayoutPolicy policy;
+    private final SplittableRandom random;
+    private final int[] cells = new int[81];
+    private int lastLength = 0;
+
+    /**
+     * Creates an engine with a random seed.
+     */
+    public PlayoutEngine(PlayoutPolicy policy) {
+        this(policy, ThreadLocalRandom.current().nextLong());
+    }
+
+    /**
+     * Creates an engine that plays the same games every run, e.g. for benchmarks.
+     */
+    public PlayoutEngine(PlayoutPolicy policy, long seed) {
+        this.policy = policy;
+        this.random = new SplittableRandom(seed);
+    }
+
+    /**
+     * Plays the game to the end and takes all the moves back again.
+     * @param simulator The position to start from, it is the same when this returns
+     * @return The winner (0 or 1), or -1 for a tie
+     */
+    public int playout(GameSimulator simulator) {
+        int length = 0;
+        while (!simulator.isTerminal()) {
+            int count = simulator.getAvailableMoves(cells);
+            int cell = policy.choose(simulator, cells, count, random);
+            simulator.makeMove(cell / 9, cell % 9);
+            length++;
+        }
+        int winner = simulator.getWinner();
+        for (int i = 0; i < length; i++)
+            simulator.unmakeMove();
+        lastLength = length;
+        return winner;
+    }
+
+    /**
+     * @return The number of moves in the latest playout
+     */
+    public int getLastLength() {
+        return lastLength;
+    }
+
+    /**
+     * @return The random generator of this engine, for picking moves outside of playouts
+     */
+    public SplittableRandom getRandom() {
+        return random;
+    }
+
+    public PlayoutPolicy getPolicy() {
+        return policy;
+    }
+}
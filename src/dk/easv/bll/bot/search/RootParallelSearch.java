@@ -0,0 +1,127 @@
+package dk.easv.bll.bot.search;
+
+import dk.easv.bll.game.GameSimulator;
+import dk.easv.bll.move.IMove;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Root parallel MCTS: independent searches of the same position, one per thread,
+ * each with its own tree and random seed. When they are done, the visits and
+ * scores of the root moves are added up over all the trees, and the move with
+ * the best average score is played.
+ *
+ * The searches share nothing while they run, so this scales without any
+ * contention, at the price of every thread searching the top of the tree again.
+ * The bot supplies the searches, so it keeps its own Node and UCT code.
+ */
+public final class RootParallelSearch {
+
+    private RootParallelSearch() {
+    }
+
+    /**
+     * One independent search, run on its own thread.
+     */
+    public interface Search {
+        /**
+         * Searches until the deadline, then adds the visits and score of every root move to stats.
+         * @param random The random generator for this search only
+         * @param stats The statistics for this search only
+         * @return The number of iterations done
+         */
+        int run(SplittableRandom random, Statistics stats);
+    }
+
+    /**
+     * Runs the searches, the first on the calling thread and the others on helper threads,
+     * and waits for all of them.
+     * @param searches One search per thread, each on its own copy of the position
+     * @param seed Seeds the random generators of the searches, which all differ
+     * @return The merged statistics of the root moves
+     */
+    public static Statistics run(List<? extends Search> searches, long seed) {
+        SplittableRandom seeds = new SplittableRandom(seed);
+        Statistics[] stats = new Statistics[searches.size()];
+        List<Thread> helpers = new ArrayList<>();
+        for (int i = 1; i < searches.size(); i++) {
+            Search search = searches.get(i);
+            SplittableRandom random = seeds.split();
+            Statistics own = stats[i] = new Statistics();
+            Thread helper = new Thread(() -> own.iterations += search.run(random, own), "Root search " + i);
+            helper.setDaemon(true);
+            helper.start();
+            helpers.add(helper);
+        }
+        Statistics merged = stats[0] = new Statistics();
+        merged.iterations += searches.get(0).run(seeds.split(), merged);
+        for (Thread helper : helpers) {
+            try {
+                helper.join(); // Also makes the statistics of the helper visible here
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (int i = 1; i < stats.length; i++)
+            merged.merge(stats[i]);
+        return merged;
+    }
+
+    /**
+     * Visits and total score of the root moves, indexed by cell x*9 + y.
+     */
+    public static final class Statistics {
+        private final double[] visits = new double[81];
+        private final double[] scores = new double[81];
+        private int iterations = 0;
+
+        public void add(IMove move, double visits, double score) {
+            int cell = move.getX() * 9 + move.getY();
+            this.visits[cell] += visits;
+            scores[cell] += score;
+        }
+
+        public void merge(Statistics other) {
+            for (int cell = 0; cell < 81; cell++) {
+                visits[cell] += other.visits[cell];
+                scores[cell] += other.scores[cell];
+            }
+            iterations += other.iterations;
+        }
+
+        public double getVisits(IMove move) {
+            return visits[move.getX() * 9 + move.getY()];
+        }
+
+        public double getScore(IMove move) {
+            return scores[move.getX() * 9 + move.getY()];
+        }
+
+        /**
+         * @return The iterations of all the searches together
+         */
+        public int getIterations() {
+            return iterations;
+        }
+
+        /**
+         * @return The visited move with the best average score, or null if no move was visited
+         */
+        public IMove bestMove() {
+            int best = -1;
+            double bestScore = Double.NEGATIVE_INFINITY;
+            for (int cell = 0; cell < 81; cell++) {
+                if (visits[cell] == 0)
+                    continue;
+                double avg = scores[cell] / visits[cell];
+                if (avg > bestScore) {
+                    bestScore = avg;
+                    best = cell;
+                }
+            }
+            return best < 0 ? null : GameSimulator.toMove(best);
+        }
+    }
+}
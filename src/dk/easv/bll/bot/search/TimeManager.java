@@ -0,0 +1,197 @@
+package dk.easv.bll.bot.search;
+
+import dk.easv.bll.game.IGameState;
+
+/**
+ * Decides how long a bot thinks about a move, from getTimePerMove() of the state.
+ *
+ * Every move gets two deadlines. The hard deadline is the time per move less a safety
+ * margin, and is never passed. The soft deadline is a share of that, larger when there
+ * is more to choose from and smaller in the opening. At the soft deadline the search
+ * stops if its best move is stable, that is if it has not changed in the latter half of
+ * the search so far, otherwise it goes on until the best move settles or the hard
+ * deadline comes.
+ *
+ * isTimeUp is meant for the loop of a search. It reads System.nanoTime() only once every
+ * so many calls, and adapts how many so the clock is read every 20 to 100 microseconds
+ * whether a call stands for a node or for a whole MCTS iteration. It also stops when the
+ * longest interval so far would run past the hard deadline, so the last one does not run over.
+ *
+ * Times are System.nanoTime() values, which may overflow, so they are only ever compared by
+ * subtracting them.
+ *
+ * A manager is used for one search at a time. The threads of a parallel search may share
+ * it: they all stop together, the counters are just not exact then, which only moves when
+ * the clock is read.
+ */
+public final class TimeManager {
+
+    // Time left for returning the move after a search is stopped
+    public static final long SAFETY_MS = 10;
+    // The soft deadline as a share of the time until the hard deadline
+    private static final double SOFT_SHARE = 0.5;
+    private static final double FREE_CHOICE_SHARE = 0.2; // Added when any microboard may be played
+    private static final double OPENING_SHARE = -0.15; // Added in the opening
+    private static final int OPENING_MOVES = 8;
+    // The interval between clock reads is kept within these bounds (in nanoseconds)
+    private static final long MIN_GAP = 20_000;
+    private static final long MAX_GAP = 100_000;
+    private static final int MAX_INTERVAL = 4096;
+
+    private long start;
+    private long softDeadline;
+    private long hardDeadline;
+    private int interval = 1;
+    private int calls = 0;
+    private long lastCheck;
+    private long longestGap;
+    private volatile boolean stopped;
+    private volatile int bestMove;
+    private volatile long lastChange;
+
+    /**
+     * Starts timing a move now.
+     * @param state The position, for getTimePerMove() and getMoveNumber()
+     * @param legalMoves The number of moves to choose from. With one or none, time is up at once
+     */
+    public void start(IGameState state, int legalMoves) {
+        start = System.nanoTime();
+        int timePerMove = state.getTimePerMove();
+        long budget = Math.max(timePerMove - SAFETY_MS, timePerMove / 2) * 1_000_000L;
+        double share = SOFT_SHARE;
+        if (legalMoves > 9)
+            share += FREE_CHOICE_SHARE;
+        if (state.getMoveNumber() < OPENING_MOVES)
+            share += OPENING_SHARE;
+        hardDeadline = start + budget;
+        softDeadline = legalMoves <= 1 ? start : start + (long) (budget * share);
+        reset(legalMoves <= 1);
+    }
+
+    /**
+     * Starts timing a search that has no deadline and runs until stop is called, e.g. pondering.
+     */
+    public void startUntilStopped() {
+        start = System.nanoTime();
+        // As far away as nanoTime differences reach
+        hardDeadline = start + Long.MAX_VALUE;
+        softDeadline = hardDeadline;
+        reset(false);
+    }
+
+    private void reset(boolean stop) {
+        interval = 1;
+        calls = 0;
+        lastCheck = start;
+        longestGap = 0;
+        stopped = stop;
+        bestMove = -1;
+        lastChange = start;
+    }
+
+    /**
+     * Tells the manager the move the search would play now. Cheap, so it can be called every iteration.
+     */
+    public void setBestMove(int move) {
+        if (move != bestMove) {
+            bestMove = move;
+            lastChange = System.nanoTime();
+        }
+    }
+
+    /**
+     * @return true once the hard deadline is near, or the soft deadline is passed and
+     * the best move is stable. Reads the clock only every so many calls
+     */
+    public boolean isTimeUp() {
+        if (stopped)
+            return true;
+        if (++calls < interval)
+            return false;
+        return check(true);
+    }
+
+    /**
+     * Like isTimeUp, but only stops for the hard deadline, for searches that can not stop
+     * halfway without losing their work (see isSoftTimeUp).
+     */
+    public boolean isHardTimeUp() {
+        if (stopped)
+            return true;
+        if (++calls < interval)
+            return false;
+        return check(false);
+    }
+
+    /**
+     * Reads the clock at once, for the end of an iteration of an iterative deepening search.
+     * @return true if a search that stops at the soft deadline would stop now
+     */
+    public boolean isSoftTimeUp() {
+        long now = System.nanoTime();
+        return stopped || now - hardDeadline >= 0 || (now - softDeadline >= 0 && isStable(now));
+    }
+
+    private boolean check(boolean soft) {
+        calls = 0;
+        long now = System.nanoTime();
+        long gap = now - lastCheck;
+        lastCheck = now;
+        longestGap = Math.max(longestGap, gap);
+        if (gap < MIN_GAP && interval < MAX_INTERVAL)
+            interval *= 2;
+        else if (gap > MAX_GAP && interval > 1)
+            interval /= 2;
+        // The next read may come as late as the longest gap so far, which must still be before the hard deadline
+        if (now + longestGap - hardDeadline >= 0 || (soft && now - softDeadline >= 0 && isStable(now)))
+            stopped = true;
+        return stopped;
+    }
+
+    private boolean isStable(long now) {
+        return now - lastChange >= (now - start) / 2;
+    }
+
+    /**
+     * Stops the search at its next check, e.g. when its result can not change any more.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * @return true once stop was called or a check found the time up. Reads no clock, so it is cheap
+     * enough for the middle of an iteration that takes long, e.g. expanding a node
+     */
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * @return System.nanoTime() when the move was started
+     */
+    public long getStartTime() {
+        return start;
+    }
+
+    /**
+     * @return System.nanoTime() the search stops at if the best move is stable
+     */
+    public long getSoftDeadline() {
+        return softDeadline;
+    }
+
+    /**
+     * @return System.nanoTime() the search stops at whatever happens
+     */
+    public long getHardDeadline() {
+        return hardDeadline;
+    }
+
+    /**
+     * @return The time since start, in milliseconds
+     */
+    public double getElapsedMs() {
+        return (System.nanoTime() - start) / 1e6;
+    }
+}
@@ -0,0 +1,203 @@
+package dk.easv.bll.bot.search;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed-size, lock-free transposition table keyed by the 64-bit position hash
+ * (see IGameState.getHash()). Any bot can use it to remember what it found out
+ * about a position, and it is safe to share one table between threads and bots.
+ *
+ * The table is a single long[] with two longs per entry and four entries per
+ * bucket (one cache line). An entry stores (hash ^ data, data), so a reader can
+ * tell if another thread was writing the entry at the same time: the check only
+ * passes when both longs belong together. No locks and no objects per entry.
+ *
+ * The data long holds the depth (8 bits), the age (7 bits), a used flag and a
+ * 48-bit payload that is up to the caller. Helpers for the common payloads are
+ * at the bottom. When a bucket is full, the entry from the oldest search with
+ * the lowest depth is replaced.
+ */
+public final class TranspositionTable {
+
+    /** Returned by probe when the position is not in the table. Payloads are never negative. */
+    public static final long MISS = -1;
+
+    private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final int ENTRIES_PER_BUCKET = 4;
+    private static final long USED = 1L << 15;
+    private static final long PAYLOAD_MASK = (1L << 48) - 1;
+
+    private final long[] slots;
+    private final int bucketMask;
+    private volatile int age = 0;
+
+    private final LongAdder probes = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+
+    /**
+     * @param entries The number of entries, rounded up to a power of two of at least 4, one bucket (16 bytes each)
+     */
+    public TranspositionTable(int entries) {
+        int needed = Math.max((entries + ENTRIES_PER_BUCKET - 1) / ENTRIES_PER_BUCKET, 1);
+        int buckets = needed == 1 ? 1 : Integer.highestOneBit(needed - 1) << 1;
+        slots = new long[buckets * ENTRIES_PER_BUCKET * 2];
+        bucketMask = buckets - 1;
+    }
+
+    /**
+     * Marks the start of a new search. Entries from older searches are replaced first.
+     */
+    public void newSearch() {
+        age = (age + 1) & 0x7F;
+    }
+
+    /**
+     * @param hash The position hash
+     * @return The payload stored for the position, or MISS
+     */
+    public long probe(long hash) {
+        probes.increment();
+        int base = bucketStart(hash);
+        for (int i = base; i < base + ENTRIES_PER_BUCKET * 2; i += 2) {
+            long check = (long) SLOTS.getOpaque(slots, i);
+            long data = (long) SLOTS.getOpaque(slots, i + 1);
+            if ((data & USED) != 0 && (check ^ data) == hash) {
+                hits.increment();
+                return data >>> 16;
+            }
+        }
+        return MISS;
+    }
+
+    /**
+     * Stores a payload for the position. An existing entry for the same position is always
+     * overwritten, otherwise the weakest entry in the bucket is replaced.
+     * @param hash The position hash
+     * @param payload Up to 48 bits of data, see the pack methods
+     * @param depth How much work the payload represents (0-255), deeper entries are kept longer
+     */
+    public void store(long hash, long payload, int depth) {
+        int currentAge = age;
+        long data = ((payload & PAYLOAD_MASK) << 16) | USED | ((long) currentAge << 8) | Math.min(Math.max(depth, 0), 255);
+        int base = bucketStart(hash);
+        int victim = base;
+        int victimWorth = Integer.MAX_VALUE;
+        for (int i = base; i < base + ENTRIES_PER_BUCKET * 2; i += 2) {
+            long oldCheck = (long) SLOTS.getOpaque(slots, i);
+            long oldData = (long) SLOTS.getOpaque(slots, i + 1);
+            if ((oldData & USED) == 0 || (oldCheck ^ oldData) == hash) {
+                victim = i;
+                break;
+            }
+            // Entries from the current search are always worth more than older ones
+            int worth = (int) (oldData & 0xFF) + (((oldData >>> 8) & 0x7F) == currentAge ? 256 : 0);
+            if (worth < victimWorth) {
+                victimWorth = worth;
+                victim = i;
+            }
+        }
+        SLOTS.setOpaque(slots, victim, hash ^ data);
+        SLOTS.setOpaque(slots, victim + 1, data);
+    }
+
+    /**
+     * Empties the table and resets the statistics.
+     */
+    public void clear() {
+        for (int i = 0; i < slots.length; i++)
+            SLOTS.setOpaque(slots, i, 0L);
+        resetStatistics();
+    }
+
+    public long getProbes() {
+        return probes.sum();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public double getHitRate() {
+        long p = probes.sum();
+        return p == 0 ? 0 : (double) hits.sum() / p;
+    }
+
+    public void resetStatistics() {
+        probes.reset();
+        hits.reset();
+    }
+
+    /**
+     * @return The number of entries the table can hold
+     */
+    public int capacity() {
+        return slots.length / 2;
+    }
+
+    private int bucketStart(long hash) {
+        return ((int) (hash ^ (hash >>> 32)) & bucketMask) * ENTRIES_PER_BUCKET * 2;
+    }
+
+    // Payload helpers
+
+    /**
+     * Packs MCTS statistics: visits (saturating at 65535) and the mean score.
+     */
+    public static long packStats(int visits, float mean) {
+        return Math.min(visits, 0xFFFF) | ((Float.floatToRawIntBits(mean) & 0xFFFFFFFFL) << 16);
+    }
+
+    public static int statsVisits(long payload) {
+        return (int) (payload & 0xFFFF);
+    }
+
+    public static float statsMean(long payload) {
+        return Float.intBitsToFloat((int) (payload >>> 16));
+    }
+
+    /**
+     * Packs a single int, e.g. a cached evaluation.
+     */
+    public static long packValue(int value) {
+        return value & 0xFFFFFFFFL;
+    }
+
+    public static int value(long payload) {
+        return (int) payload;
+    }
+
+    /** Bounds for alpha-beta results, see packSearch. */
+    public static final int EXACT = 0;
+    public static final int LOWER = 1;
+    public static final int UPPER = 2;
+
+    /** The move stored when a search result has no best move. */
+    public static final int NO_MOVE = 0x7F;
+
+    /**
+     * Packs an alpha-beta result: the value (24 bits, signed), the bound (2 bits),
+     * the best move as a cell index x*9 + y or NO_MOVE (7 bits) and the depth searched (8 bits).
+     */
+    public static long packSearch(int value, int bound, int move, int depth) {
+        return ((value + (1L << 23)) & 0xFFFFFF) | ((long) bound << 24) | ((long) (move & 0x7F) << 26)
+                | ((long) Math.min(Math.max(depth, 0), 255) << 33);
+    }
+
+    public static int searchValue(long payload) {
+        return (int) (payload & 0xFFFFFF) - (1 << 23);
+    }
+
+    public static int searchBound(long payload) {
+        return (int) (payload >>> 24) & 0x3;
+    }
+
+    public static int searchMove(long payload) {
+        return (int) (payload >>> 26) & 0x7F;
+    }
+
+    public static int searchDepth(long payload) {
+        return (int) (payload >>> 33) & 0xFF;
+    }
+}
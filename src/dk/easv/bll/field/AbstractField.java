@@ -0,0 +1,356 @@
+package dk.easv.bll.field;
+
+import dk.easv.bll.move.IMove;
+import dk.easv.bll.move.Move;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * Base class for fields that keep the board in a compact form and only show it
+ * as Strings when asked to.
+ *
+ * Subclasses implement the storage (the package-private methods at the bottom),
+ * this class implements IField on top of it. The String arrays returned by
+ * getBoard() and getMacroboard() are created the first time they are asked for,
+ * and brought up to date whenever they are asked for again after the field has
+ * changed. Anything written into the arrays is part of the field at once, as if
+ * the arrays were the board: before the storage is read, copied or changed, the
+ * cells that differ from what was last written into the views are applied to it.
+ * A field whose views were never asked for skips that, and reading a field whose
+ * views were not written to changes nothing, so the GUI can show the board while
+ * a bot plays on it.
+ */
+abstract class AbstractField implements IField {
+
+    private static final int FULL_MASK = 0x1FF;
+    // The cell index x*9 + y of every bit of every microboard, indexed by micro * 9 + bit
+    private static final byte[] CELLS = new byte[81];
+
+    static {
+        for (int micro = 0; micro < 9; micro++)
+            for (int bit = 0; bit < 9; bit++)
+                CELLS[micro * 9 + bit] = (byte) (((micro / 3) * 3 + bit / 3) * 9 + (micro % 3) * 3 + bit % 3);
+    }
+
+    // Only allocated once somebody asks for them, most copies made by bots never do
+    // Set last, once the views are filled in, so sync can tell whether there are views at all
+    private volatile String[][] boardView;
+    private String[][] macroView;
+    // The codes last written into the views, board cells first, so sync can tell what was written to them since
+    private byte[] viewCodes;
+    private boolean viewStale = false;
+
+    @Override
+    public void clearBoard() {
+        sync();
+        clear();
+        changed();
+    }
+
+    @Override
+    public byte getCell(int x, int y) {
+        sync();
+        return cell(x, y);
+    }
+
+    @Override
+    public void setCell(int x, int y, byte value) {
+        sync();
+        putCell(x, y, value);
+        changed();
+    }
+
+    @Override
+    public byte getMacroCell(int x, int y) {
+        sync();
+        return macroCell(x, y);
+    }
+
+    @Override
+    public void setMacroCell(int x, int y, byte value) {
+        sync();
+        putMacroCell(x, y, value);
+        changed();
+    }
+
+    @Override
+    public int getStones(int player, int micro) {
+        sync();
+        return stones(player, micro);
+    }
+
+    @Override
+    public int getOccupied(int micro) {
+        sync();
+        return stones(0, micro) | stones(1, micro);
+    }
+
+    @Override
+    public int getWonMask(int player) {
+        sync();
+        return wonMask(player);
+    }
+
+    @Override
+    public int getTiedMask() {
+        sync();
+        return tiedMask();
+    }
+
+    @Override
+    public int getActiveMask() {
+        sync();
+        return activeMask();
+    }
+
+    @Override
+    public void setMacroMasks(int won0, int won1, int tied, int active) {
+        sync();
+        putMacroMasks(won0, won1, tied, active);
+        changed();
+    }
+
+    @Override
+    public int getAvailableMask(int microboard) {
+        sync();
+        if ((activeMask() & (1 << microboard)) == 0)
+            return 0;
+        return ~(stones(0, microboard) | stones(1, microboard)) & FULL_MASK;
+    }
+
+    // Built from the int[] moves, as calling an IntConsumer for every move took twice as long
+    @Override
+    public List<IMove> getAvailableMoves() {
+        int[] cells = new int[81];
+        int count = getAvailableMoves(cells);
+        List<IMove> moves = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            moves.add(new Move(cells[i] / 9, cells[i] % 9));
+        return moves;
+    }
+
+    @Override
+    public void forEachAvailableMove(IntConsumer action) {
+        sync();
+        int active = activeMask();
+        for (int mx = 0; mx < 3; mx++) {
+            int free0 = free(active, mx * 3);
+            int free1 = free(active, mx * 3 + 1);
+            int free2 = free(active, mx * 3 + 2);
+            for (int cx = 0; cx < 3; cx++) {
+                int x = mx * 3 + cx;
+                int row = cx * 3;
+                for (int cy = 0; cy < 3; cy++)
+                    if ((free0 & (1 << (row + cy))) != 0) action.accept(x * 9 + cy);
+                for (int cy = 0; cy < 3; cy++)
+                    if ((free1 & (1 << (row + cy))) != 0) action.accept(x * 9 + 3 + cy);
+                for (int cy = 0; cy < 3; cy++)
+                    if ((free2 & (1 << (row + cy))) != 0) action.accept(x * 9 + 6 + cy);
+            }
+        }
+    }
+
+    @Override
+    public int getAvailableMoves(int[] cells) {
+        sync();
+        int active = activeMask();
+        int count = 0;
+        if ((active & (active - 1)) == 0 && active != 0) {
+            // Most of a game is played in a single microboard, whose bits are already in cell order
+            int micro = Integer.numberOfTrailingZeros(active);
+            for (int free = free(active, micro); free != 0; free &= free - 1)
+                cells[count++] = CELLS[micro * 9 + Integer.numberOfTrailingZeros(free)];
+            return count;
+        }
+        for (int mx = 0; mx < 3; mx++) {
+            int free0 = free(active, mx * 3);
+            int free1 = free(active, mx * 3 + 1);
+            int free2 = free(active, mx * 3 + 2);
+            for (int cx = 0; cx < 3; cx++) {
+                int x = mx * 3 + cx;
+                int row = cx * 3;
+                // The nine cells of column x, bit y set if it is free
+                int free = ((free0 >>> row) & 7) | (((free1 >>> row) & 7) << 3) | (((free2 >>> row) & 7) << 6);
+                for (; free != 0; free &= free - 1)
+                    cells[count++] = x * 9 + Integer.numberOfTrailingZeros(free);
+            }
+        }
+        return count;
+    }
+
+    private int free(int active, int micro) {
+        if ((active & (1 << micro)) == 0)
+            return 0;
+        return ~(stones(0, micro) | stones(1, micro)) & FULL_MASK;
+    }
+
+    @Override
+    public String getPlayerId(int column, int row) {
+        return Cell.toString(getCell(column, row));
+    }
+
+    @Override
+    public boolean isEmpty() {
+        sync();
+        for (int i = 0; i < 9; i++)
+            if ((stones(0, i) | stones(1, i)) != 0)
+                return false;
+        return true;
+    }
+
+    @Override
+    public boolean isFull() {
+        sync();
+        for (int i = 0; i < 9; i++)
+            if ((stones(0, i) | stones(1, i)) != FULL_MASK)
+                return false;
+        return true;
+    }
+
+    @Override
+    public Boolean isInActiveMicroboard(int x, int y) {
+        sync();
+        return (activeMask() & (1 << ((x / 3) * 3 + y / 3))) != 0;
+    }
+
+    @Override
+    public String[][] getBoard() {
+        lendView();
+        return boardView;
+    }
+
+    @Override
+    public String[][] getMacroboard() {
+        lendView();
+        return macroView;
+    }
+
+    @Override
+    public void setBoard(String[][] board) {
+        sync();
+        for (int x = 0; x < 9; x++)
+            for (int y = 0; y < 9; y++)
+                putCell(x, y, boardCode(board[x][y]));
+        changed();
+    }
+
+    @Override
+    public void setMacroboard(String[][] macroboard) {
+        sync();
+        for (int x = 0; x < 3; x++)
+            for (int y = 0; y < 3; y++)
+                putMacroCell(x, y, Cell.parse(macroboard[x][y]));
+        changed();
+    }
+
+    /**
+     * Marks the String views as out of date. Must be called after changing the storage.
+     */
+    final void changed() {
+        viewStale = true;
+    }
+
+    /**
+     * Applies whatever was written into the String views to the storage. Called before
+     * the storage is read, copied or changed, including by the copy constructors.
+     */
+    final void sync() {
+        if (boardView != null)
+            applyView();
+    }
+
+    private synchronized void lendView() {
+        if (boardView == null) {
+            macroView = new String[3][3];
+            viewCodes = new byte[81 + 9];
+            String[][] board = new String[9][9];
+            writeView(board);
+            viewStale = false;
+            boardView = board;
+            return;
+        }
+        applyView();
+        if (viewStale) {
+            viewStale = false;
+            writeView(boardView);
+        }
+    }
+
+    /**
+     * Writes the cells of the views that differ from what was last written into them to the storage.
+     * The views hold the Cell.toString constants, so a cell nobody wrote to costs one identity check.
+     */
+    private synchronized void applyView() {
+        String[][] board = boardView;
+        for (int x = 0; x < 9; x++)
+            for (int y = 0; y < 9; y++) {
+                String value = board[x][y];
+                byte code = viewCodes[x * 9 + y];
+                if (value != Cell.toString(code)) {
+                    byte written = boardCode(value);
+                    if (written != code) {
+                        putCell(x, y, written);
+                        viewCodes[x * 9 + y] = written;
+                    }
+                }
+            }
+        for (int x = 0; x < 3; x++)
+            for (int y = 0; y < 3; y++) {
+                String value = macroView[x][y];
+                byte code = viewCodes[81 + x * 3 + y];
+                if (value != Cell.toString(code)) {
+                    byte written = Cell.parse(value);
+                    if (written != code) {
+                        putMacroCell(x, y, written);
+                        viewCodes[81 + x * 3 + y] = written;
+                    }
+                }
+            }
+    }
+
+    // Anything but a player's stone is an empty board cell
+    private static byte boardCode(String value) {
+        byte code = Cell.parse(value);
+        return code == Cell.PLAYER_0 || code == Cell.PLAYER_1 ? code : Cell.EMPTY;
+    }
+
+    private void writeView(String[][] board) {
+        for (int x = 0; x < 9; x++)
+            for (int y = 0; y < 9; y++) {
+                byte code = cell(x, y);
+                viewCodes[x * 9 + y] = code;
+                board[x][y] = Cell.toString(code);
+            }
+        for (int x = 0; x < 3; x++)
+            for (int y = 0; y < 3; y++) {
+                byte code = macroCell(x, y);
+                viewCodes[81 + x * 3 + y] = code;
+                macroView[x][y] = Cell.toString(code);
+            }
+    }
+
+    // Storage, implemented by the subclasses. These never touch the views.
+
+    /** Empties the board and makes every microboard available. */
+    abstract void clear();
+
+    abstract byte cell(int x, int y);
+
+    abstract void putCell(int x, int y, byte value);
+
+    abstract byte macroCell(int x, int y);
+
+    abstract void putMacroCell(int x, int y, byte value);
+
+    abstract int stones(int player, int micro);
+
+    abstract int wonMask(int player);
+
+    abstract int tiedMask();
+
+    abstract int activeMask();
+
+    abstract void putMacroMasks(int won0, int won1, int tied, int active);
+}
@@ -0,0 +1,141 @@
+package dk.easv.bll.field;
+
+/**
+ * An IField that keeps the board as bitmasks instead of Strings.
+ *
+ * Every microboard is a 9-bit mask per player, where bit (x%3)*3 + (y%3) is
+ * the cell inside the microboard and microboard (x/3)*3 + (y/3) is the index
+ * into the arrays. The macroboard is kept as a won mask per player, a tied
+ * mask and an active mask, using the same 3x3 bit layout.
+ *
+ * See AbstractField for how the String views work.
+ */
+public class BitboardField extends AbstractField {
+
+    public static final int FULL_MASK = 0x1FF;
+
+    private final int[] stones0 = new int[9];
+    private final int[] stones1 = new int[9];
+    private int won0;
+    private int won1;
+    private int tied;
+    private int active;
+
+    public BitboardField() {
+        clearBoard();
+    }
+
+    /**
+     * Creates a copy of another bitboard field, without going through the String views.
+     * @param other The field to copy
+     */
+    public BitboardField(BitboardField other) {
+        other.sync();
+        System.arraycopy(other.stones0, 0, stones0, 0, 9);
+        System.arraycopy(other.stones1, 0, stones1, 0, 9);
+        won0 = other.won0;
+        won1 = other.won1;
+        tied = other.tied;
+        active = other.active;
+    }
+
+    /**
+     * @param x Column
+     * @param y Row
+     * @return The microboard index (0-8) the cell belongs to
+     */
+    public static int microIndex(int x, int y) {
+        return (x / 3) * 3 + y / 3;
+    }
+
+    /**
+     * @param x Column
+     * @param y Row
+     * @return The bit of the cell inside its microboard mask
+     */
+    public static int cellBit(int x, int y) {
+        return 1 << ((x % 3) * 3 + y % 3);
+    }
+
+    @Override
+    void clear() {
+        for (int i = 0; i < 9; i++) {
+            stones0[i] = 0;
+            stones1[i] = 0;
+        }
+        won0 = 0;
+        won1 = 0;
+        tied = 0;
+        active = FULL_MASK;
+    }
+
+    @Override
+    byte cell(int x, int y) {
+        int micro = microIndex(x, y);
+        int bit = cellBit(x, y);
+        if ((stones0[micro] & bit) != 0) return Cell.PLAYER_0;
+        if ((stones1[micro] & bit) != 0) return Cell.PLAYER_1;
+        return Cell.EMPTY;
+    }
+
+    @Override
+    void putCell(int x, int y, byte value) {
+        int micro = microIndex(x, y);
+        int bit = cellBit(x, y);
+        stones0[micro] &= ~bit;
+        stones1[micro] &= ~bit;
+        if (value == Cell.PLAYER_0) stones0[micro] |= bit;
+        else if (value == Cell.PLAYER_1) stones1[micro] |= bit;
+    }
+
+    @Override
+    byte macroCell(int x, int y) {
+        int bit = 1 << (x * 3 + y);
+        if ((won0 & bit) != 0) return Cell.PLAYER_0;
+        if ((won1 & bit) != 0) return Cell.PLAYER_1;
+        if ((tied & bit) != 0) return Cell.TIE;
+        if ((active & bit) != 0) return Cell.AVAILABLE;
+        return Cell.EMPTY;
+    }
+
+    @Override
+    void putMacroCell(int x, int y, byte value) {
+        int bit = 1 << (x * 3 + y);
+        won0 &= ~bit;
+        won1 &= ~bit;
+        tied &= ~bit;
+        active &= ~bit;
+        if (value == Cell.PLAYER_0) won0 |= bit;
+        else if (value == Cell.PLAYER_1) won1 |= bit;
+        else if (value == Cell.TIE) tied |= bit;
+        else if (value == Cell.AVAILABLE) active |= bit;
+    }
+
+    @Override
+    int stones(int player, int micro) {
+        return player == 0 ? stones0[micro] : stones1[micro];
+    }
+
+    @Override
+    int wonMask(int player) {
+        return player == 0 ? won0 : won1;
+    }
+
+    @Override
+    int tiedMask() {
+        return tied;
+    }
+
+    @Override
+    int activeMask() {
+        return active;
+    }
+
+    @Override
+    void putMacroMasks(int won0, int won1, int tied, int active) {
+        this.won0 = won0;
+        this.won1 = won1;
+        this.tied = tied;
+        this.active = active;
+    }
+}
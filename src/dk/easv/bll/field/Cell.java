@@ -0,0 +1,59 @@
+package dk.easv.bll.field;
+
+/**
+ * Byte codes for the cells of the board and the macroboard, used by the typed
+ * IField accessors instead of the "0", "1", ".", "-1" and "TIE" Strings.
+ *
+ * Board cells are EMPTY, PLAYER_0 or PLAYER_1 and fit in 2 bits.
+ * Macroboard cells can also be TIE or AVAILABLE and fit in 3 bits.
+ */
+public final class Cell {
+
+    public static final byte EMPTY = 0;
+    public static final byte PLAYER_0 = 1;
+    public static final byte PLAYER_1 = 2;
+    public static final byte TIE = 3;
+    public static final byte AVAILABLE = 4;
+
+    private static final String[] NAMES = {IField.EMPTY_FIELD, "0", "1", "TIE", IField.AVAILABLE_FIELD};
+
+    private Cell() {
+    }
+
+    /**
+     * @param player 0 or 1
+     * @return PLAYER_0 or PLAYER_1
+     */
+    public static byte of(int player) {
+        return (byte) (player + 1);
+    }
+
+    /**
+     * @param cell A cell code
+     * @return The player (0 or 1) owning the cell, or -1 if nobody does
+     */
+    public static int player(byte cell) {
+        return cell == PLAYER_0 ? 0 : cell == PLAYER_1 ? 1 : -1;
+    }
+
+    /**
+     * @return The String the cell has always been shown as, e.g. "0" for PLAYER_0
+     */
+    public static String toString(byte cell) {
+        return NAMES[cell];
+    }
+
+    /**
+     * Parses a String cell value. Anything unknown is EMPTY.
+     */
+    public static byte parse(String value) {
+        // The views only ever hold the constants above, so try identity before equals
+        for (byte cell = 0; cell < NAMES.length; cell++)
+            if (NAMES[cell] == value)
+                return cell;
+        for (byte cell = 0; cell < NAMES.length; cell++)
+            if (NAMES[cell].equals(value))
+                return cell;
+        return EMPTY;
+    }
+}
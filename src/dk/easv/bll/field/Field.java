@@ -1,109 +1,110 @@
 package dk.easv.bll.field;
 
-import dk.easv.bll.move.IMove;
-import dk.easv.bll.move.Move;
+/**
+ * The default field. Every cell of the board is a 2-bit Cell code, packed 27 to
+ * a long, and every macroboard cell is a 3-bit Cell code packed into an int,
+ * which is 28 bytes for the whole game instead of 90 String references.
+ * See AbstractField for how the String views work.
+ */
+public class Field extends AbstractField {
 
-import java.util.ArrayList;
-import java.util.List;
-
-public class Field implements IField{
-
-    volatile String[][] board = new String[9][9];
-    volatile String[][] macroBoard = new String[3][3];
+    private final long[] cells = new long[3];
+    private int macroCells;
 
     public Field() {
         clearBoard();
     }
 
-    @Override
-    public void clearBoard() {
-        board = new String[9][9];
-        for (int i = 0; i < board.length; i++)
-            for (int k = 0; k < board[i].length; k++) {
-                board[i][k] = EMPTY_FIELD;
-            }
-        for (int i = 0; i < macroBoard.length; i++)
-            for (int k = 0; k < macroBoard[i].length; k++) {
-                macroBoard[i][k] = AVAILABLE_FIELD;
-            }
+    /**
+     * Creates a copy of another field, without going through the String views.
+     * @param other The field to copy
+     */
+    public Field(Field other) {
+        other.sync();
+        System.arraycopy(other.cells, 0, cells, 0, 3);
+        macroCells = other.macroCells;
     }
 
     @Override
-    public List<IMove> getAvailableMoves() {
-        List<IMove> availMoves = new ArrayList<>();
-
-        for (int i = 0; i < board.length; i++)
-            for (int k = 0; k < board[i].length; k++) {
-                if(isInActiveMicroboard(i,k) && board[i][k].equals(EMPTY_FIELD)) {
-                    availMoves.add(new Move(i,k));
-                }
-        }
+    void clear() {
+        cells[0] = 0;
+        cells[1] = 0;
+        cells[2] = 0;
+        putMacroMasks(0, 0, 0, 0x1FF);
+    }
 
-        return availMoves;
+    @Override
+    byte cell(int x, int y) {
+        int index = x * 9 + y;
+        return (byte) ((cells[index / 27] >>> ((index % 27) * 2)) & 3);
     }
 
     @Override
-    public String getPlayerId(int column, int row) {
-        return board[column][row];
+    void putCell(int x, int y, byte value) {
+        int index = x * 9 + y;
+        int shift = (index % 27) * 2;
+        cells[index / 27] = (cells[index / 27] & ~(3L << shift)) | ((long) value << shift);
     }
 
     @Override
-    public boolean isEmpty() {
-        for (int i = 0; i < board.length; i++)
-            for (int k = 0; k < board[i].length; k++) {
-                if(board[i][k]!=EMPTY_FIELD && board[i][k]!=AVAILABLE_FIELD)
-                    return false;
-            }
-        return true;
+    byte macroCell(int x, int y) {
+        return (byte) ((macroCells >>> ((x * 3 + y) * 3)) & 7);
     }
 
     @Override
-    public boolean isFull() {
-        for (int i = 0; i < board.length; i++)
-            for (int k = 0; k < board[i].length; k++) {
-                if(board[i][k]==EMPTY_FIELD || board[i][k]==AVAILABLE_FIELD)
-                    return false;
-            }
-        return true;
+    void putMacroCell(int x, int y, byte value) {
+        int shift = (x * 3 + y) * 3;
+        macroCells = (macroCells & ~(7 << shift)) | (value << shift);
     }
 
     @Override
-    public Boolean isInActiveMicroboard(int x, int y) {
-        int xTrans = x>0 ? x/3 : 0;
-        int yTrans = y>0 ? y/3 : 0;
-        String value = macroBoard[xTrans][yTrans];
-        return value.equals(AVAILABLE_FIELD);
+    int stones(int player, int micro) {
+        byte code = Cell.of(player);
+        int startX = (micro / 3) * 3;
+        int startY = (micro % 3) * 3;
+        int mask = 0;
+        for (int i = 0; i < 3; i++)
+            for (int k = 0; k < 3; k++)
+                if (cell(startX + i, startY + k) == code)
+                    mask |= 1 << (i * 3 + k);
+        return mask;
     }
 
     @Override
-    public String[][] getBoard() {
-        return board;
+    int wonMask(int player) {
+        return macroMask(Cell.of(player));
     }
 
     @Override
-    public String[][] getMacroboard() {
-        return macroBoard;
+    int tiedMask() {
+        return macroMask(Cell.TIE);
     }
 
     @Override
-    public void setBoard(String[][] board)
-    {
-        //NOTE: Cloning here, for simulation purposes
-        for (int i = 0; i < 9; i++) {
-            for (int j = 0; j < 9; j++) {
-                this.board[i][j] = board[i][j];
-            }
-        }
+    int activeMask() {
+        return macroMask(Cell.AVAILABLE);
+    }
+
+    private int macroMask(byte code) {
+        int mask = 0;
+        for (int micro = 0; micro < 9; micro++)
+            if (((macroCells >>> (micro * 3)) & 7) == code)
+                mask |= 1 << micro;
+        return mask;
     }
 
     @Override
-    public void setMacroboard(String[][] macroboard)
-    {
-        //NOTE: Cloning here, for simulation purposes
-        for (int i = 0; i < 3; i++) {
-            for (int j = 0; j < 3; j++) {
-                this.macroBoard[i][j] = macroboard[i][j];
-            }
+    void putMacroMasks(int won0, int won1, int tied, int active) {
+        int packed = 0;
+        for (int micro = 0; micro < 9; micro++) {
+            int bit = 1 << micro;
+            int code = (won0 & bit) != 0 ? Cell.PLAYER_0
+                    : (won1 & bit) != 0 ? Cell.PLAYER_1
+                    : (tied & bit) != 0 ? Cell.TIE
+                    : (active & bit) != 0 ? Cell.AVAILABLE
+                    : Cell.EMPTY;
+            packed |= code << (micro * 3);
         }
+        macroCells = packed;
     }
 }
@@ -1,7 +1,11 @@
 package dk.easv.bll.field;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.IntConsumer;
+
 import dk.easv.bll.move.IMove;
+import dk.easv.bll.move.Move;
 
 /**
  *
@@ -20,9 +24,98 @@ public interface IField {
     /**
      * Generates a list of available moves, moves are limited to the 3x3 area 
      * indicated by the opponents last move, and limited by occupied spaces.
+     * This allocates a new list and moves on every call, use one of the
+     * primitive variants below in simulations.
      * @return List of currently available moves
      */
-    List<IMove> getAvailableMoves();
+    default List<IMove> getAvailableMoves() {
+        List<IMove> availMoves = new ArrayList<>();
+        forEachAvailableMove(cell -> availMoves.add(new Move(cell / 9, cell % 9)));
+        return availMoves;
+    }
+
+    /**
+     * Returns the available moves of one microboard as a 9-bit mask,
+     * where bit (x%3)*3 + (y%3) is set for every cell that can be played.
+     * @param microboard The microboard index (x/3)*3 + (y/3)
+     * @return The mask of available cells, 0 if the microboard is not active
+     */
+    int getAvailableMask(int microboard);
+
+    /**
+     * Calls the action for every available move, in the same order as getAvailableMoves().
+     * Moves are given as cell indexes x*9 + y.
+     * @param action Called once per available move
+     */
+    void forEachAvailableMove(IntConsumer action);
+
+    /**
+     * Writes the available moves into the given array, in the same order as getAvailableMoves().
+     * Moves are given as cell indexes x*9 + y.
+     * @param cells Array to fill, must have room for 81 moves
+     * @return The number of available moves written to the array
+     */
+    int getAvailableMoves(int[] cells);
+
+    /**
+     * @param x Column
+     * @param y Row
+     * @return The cell code, Cell.EMPTY, Cell.PLAYER_0 or Cell.PLAYER_1
+     */
+    byte getCell(int x, int y);
+
+    /**
+     * Sets a cell on the board. Does not apply any game rules.
+     * @param value Cell.EMPTY, Cell.PLAYER_0 or Cell.PLAYER_1
+     */
+    void setCell(int x, int y, byte value);
+
+    /**
+     * @param x Column on the macroboard (0-2)
+     * @param y Row on the macroboard (0-2)
+     * @return The cell code, Cell.EMPTY, Cell.AVAILABLE, Cell.PLAYER_0, Cell.PLAYER_1 or Cell.TIE
+     */
+    byte getMacroCell(int x, int y);
+
+    /**
+     * Sets a cell on the macroboard. Does not apply any game rules.
+     */
+    void setMacroCell(int x, int y, byte value);
+
+    /**
+     * @param player 0 or 1
+     * @param micro Microboard index (x/3)*3 + (y/3)
+     * @return The 9-bit mask of the player's stones in the microboard, bit (x%3)*3 + (y%3)
+     */
+    int getStones(int player, int micro);
+
+    /**
+     * @param micro Microboard index (x/3)*3 + (y/3)
+     * @return The 9-bit mask of all occupied cells in the microboard
+     */
+    int getOccupied(int micro);
+
+    /**
+     * @param player 0 or 1
+     * @return The macroboard mask of microboards won by the player, bit (x/3)*3 + (y/3)
+     */
+    int getWonMask(int player);
+
+    /**
+     * @return The macroboard mask of tied microboards
+     */
+    int getTiedMask();
+
+    /**
+     * @return The macroboard mask of microboards that can be played in
+     */
+    int getActiveMask();
+
+    /**
+     * Sets the whole macroboard at once. A microboard is expected in at most one of the masks,
+     * the ones in none of them are empty.
+     */
+    void setMacroMasks(int won0, int won1, int tied, int active);
 
     /**
      * Returns the player id on given column and row
@@ -51,6 +144,9 @@ public interface IField {
     Boolean isInActiveMicroboard(int x, int y);
 
     /**
+     * The String arrays are a view for code that works with Strings. Fields may keep
+     * the board in a compact form: ask for the view again after the field has changed.
+     * Anything written into the arrays is written to the field.
      * @return the Board (the entire 9x9 board)
      */
     String[][] getBoard();
@@ -1,9 +1,7 @@
 package dk.easv.bll.game;
 
 import dk.easv.bll.bot.IBot;
-import dk.easv.bll.field.IField;
 import dk.easv.bll.move.IMove;
-import dk.easv.bll.move.Move;
 
 /**
  * This is a proposed GameManager for Ultimate Tic-Tac-Toe,
@@ -33,24 +31,23 @@ public class GameManager {
     }
     
     private final IGameState currentState;
-    private int currentPlayer = 0; //player0 == 0 && player1 == 1
+    private final GameSimulator simulator;
     private GameMode mode = GameMode.HumanVsHuman;
     private IBot bot = null;
     private IBot bot2 = null;
-    private volatile GameOverState gameOver = GameOverState.Active;
 
     public void setGameOver(GameOverState state) {
-        gameOver = state;
+        simulator.setGameOver(state);
     }
     public GameOverState getGameOver() {
-        return gameOver;
+        return simulator.getGameOver();
     }
 
     public void setCurrentPlayer(int player) {
-        currentPlayer = player;
+        simulator.setCurrentPlayer(player);
     }
     public int getCurrentPlayer() {
-        return currentPlayer;
+        return simulator.getCurrentPlayer();
     }
 
     public IGameState getCurrentState()
@@ -66,6 +63,7 @@ public class GameManager {
      */
     public GameManager(IGameState currentState) {
         this.currentState = currentState;
+        simulator = createSimulator(currentState);
         mode = GameMode.HumanVsHuman;
     }
 
@@ -78,6 +76,7 @@ public class GameManager {
      */
     public GameManager(IGameState currentState, IBot bot, boolean humanPlaysFirst) {
         this.currentState = currentState;
+        simulator = createSimulator(currentState);
         playerGoesFirst=humanPlaysFirst;
         mode = GameMode.HumanVsBot;
         this.bot = bot;
@@ -93,11 +92,20 @@ public class GameManager {
      */
     public GameManager(IGameState currentState, IBot bot, IBot bot2) {
         this.currentState = currentState;
+        simulator = createSimulator(currentState);
         mode = GameMode.BotVsBot;
         this.bot = bot;
         this.bot2 = bot2;
     }
     
+    // The game always starts with player 0 to move, whatever the state says
+    private static GameSimulator createSimulator(IGameState currentState) {
+        GameSimulator simulator = new GameSimulator(currentState);
+        simulator.setCurrentPlayer(0);
+        simulator.setGameOver(GameOverState.Active);
+        return simulator;
+    }
+
     /**
      * User input driven Update
      * @param move The next user dk.easv.bll.move
@@ -105,13 +113,31 @@ public class GameManager {
      */
     public Boolean updateGame(IMove move)
     {
-        if(!verifyMoveLegality(move)) 
-            return false;
-        
-        updateBoard(move);
-        currentPlayer = (currentPlayer + 1) % 2;
-        
-        return true;
+        return simulator.play(move);
+    }
+
+    /**
+     * Plays a move the same way as updateGame, but remembers what it changed,
+     * so it can be taken back with unmakeMove. This lets a search walk the game
+     * tree on a single state instead of cloning the state for every node.
+     * When searching from a bot's state, remember to set the current player
+     * to getMoveNumber() % 2 first.
+     * @param move The move to play
+     * @return Returns true if the move was legal and played, false otherwise.
+     */
+    public Boolean makeMove(IMove move)
+    {
+        return simulator.makeMove(move.getX(), move.getY());
+    }
+
+    /**
+     * Takes back the latest move played with makeMove, restoring the cell,
+     * the macroboard, the game over state, the current player, the counters and the hash.
+     * @return Returns true if a move was taken back, false if there was nothing to undo.
+     */
+    public Boolean unmakeMove()
+    {
+        return simulator.unmakeMove();
     }
     
     /**
@@ -124,12 +150,12 @@ public class GameManager {
         assert(mode != GameMode.HumanVsHuman);
         
         //Check if player is bot, if so, get bot input and update the state based on that.
-        if(mode == GameMode.HumanVsBot && currentPlayer == 1 && playerGoesFirst)
+        if(mode == GameMode.HumanVsBot && getCurrentPlayer() == 1 && playerGoesFirst)
         {
              IMove botMove = bot.doMove(new GameState(currentState));
              return updateGame(botMove);
         }
-        else if(mode == GameMode.HumanVsBot && !playerGoesFirst && currentPlayer == 0)
+        else if(mode == GameMode.HumanVsBot && !playerGoesFirst && getCurrentPlayer() == 0)
         {
             IMove botMove = bot.doMove(new GameState(currentState));
             return updateGame(botMove);
@@ -145,7 +171,7 @@ public class GameManager {
             assert(bot != null);
             assert(bot2 != null);
 
-            IMove botMove = currentPlayer == 0 ? bot.doMove(new GameState(currentState)) : bot2.doMove(new GameState(currentState));
+            IMove botMove = getCurrentPlayer() == 0 ? bot.doMove(new GameState(currentState)) : bot2.doMove(new GameState(currentState));
 
             return updateGame(botMove);
         }
@@ -154,136 +180,8 @@ public class GameManager {
 
 
 
-    private Boolean verifyMoveLegality(IMove move)
-    {
-        IField field = currentState.getField();
-        boolean isValid=field.isInActiveMicroboard(move.getX(), move.getY());
-
-        if(isValid && (move.getX() < 0 || 9 <= move.getX())) isValid = false;
-        if(isValid && (move.getY() < 0 || 9 <= move.getY())) isValid = false;
-
-        if(isValid && !field.getBoard()[move.getX()][move.getY()].equals(IField.EMPTY_FIELD))
-            isValid=false;
-
-        return isValid;
-    }
-    
-    private void updateBoard(IMove move)
-    {
-        String[][] board = currentState.getField().getBoard();
-        board[move.getX()][move.getY()]=currentPlayer+"";
-        currentState.setMoveNumber(currentState.getMoveNumber() + 1);
-        if(currentState.getMoveNumber() % 2 == 0) { currentState.setRoundNumber(currentState.getRoundNumber() + 1); }
-        checkAndUpdateIfWin(move);
-        updateMacroboard(move);
-
-    }
-
-    private void checkAndUpdateIfWin(IMove move) {
-        String[][] macroBoard = currentState.getField().getMacroboard();
-        int macroX = move.getX()/3;
-        int macroY = move.getY()/3;
-
-        if(macroBoard[macroX][macroY].equals(IField.EMPTY_FIELD) ||
-                macroBoard[macroX][macroY].equals(IField.AVAILABLE_FIELD) ) {
-
-            String[][] board = getCurrentState().getField().getBoard();
-
-            if(isWin(board,move, ""+currentPlayer))
-                macroBoard[macroX][macroY] = currentPlayer + "";
-            else if(isTie(board,move))
-                macroBoard[macroX][macroY] = "TIE";
-            
-            //Check macro win
-            if(isWin(macroBoard,new Move(macroX,macroY), ""+currentPlayer))
-                gameOver = GameOverState.Win;
-            else if(isTie(macroBoard,new Move(macroX,macroY)))
-                gameOver = GameOverState.Tie;
-        }
-
-    }
-
-    private boolean isTie(String[][] board, IMove move){
-        int localX = move.getX() % 3;
-        int localY = move.getY() % 3;
-        int startX = move.getX() - (localX);
-        int startY = move.getY() - (localY);
-
-        for (int i = startX; i < startX+3; i++) {
-            for (int k = startY; k < startY+3; k++) {
-                if(board[i][k].equals(IField.AVAILABLE_FIELD) ||
-                        board[i][k].equals(IField.EMPTY_FIELD) )
-                    return false;
-            }
-        }
-        return true;
-    }
-
-
     public static boolean isWin(String[][] board, IMove move, String currentPlayer){
-        int localX = move.getX() % 3;
-        int localY = move.getY() % 3;
-        int startX = move.getX() - (localX);
-        int startY = move.getY() - (localY);
-
-        //check col
-        for (int i = startY; i < startY + 3; i++) {
-            if (!board[move.getX()][i].equals(currentPlayer))
-                break;
-            if (i == startY + 3 - 1) return true;
-        }
-
-        //check row
-        for (int i = startX; i < startX + 3; i++) {
-            if (!board[i][move.getY()].equals(currentPlayer))
-                break;
-            if (i == startX + 3 - 1) return true;
-        }
-
-        //check diagonal
-        if (localX == localY) {
-            //we're on a diagonal
-            int y = startY;
-            for (int i = startX; i < startX + 3; i++) {
-                if (!board[i][y++].equals(currentPlayer))
-                    break;
-                if (i == startX + 3 - 1) return true;
-            }
-        }
-
-        //check anti diagonal
-        if (localX + localY == 3 - 1) {
-            int less = 0;
-            for (int i = startX; i < startX + 3; i++) {
-                if (!board[i][(startY + 2)-less++].equals(currentPlayer))
-                    break;
-                if (i == startX + 3 - 1) return true;
-            }
-        }
-        return false;
-    }
-    
-    private void updateMacroboard(IMove move)
-    {
-        String[][] macroBoard = currentState.getField().getMacroboard();
-        for (int i = 0; i < macroBoard.length; i++)
-            for (int k = 0; k < macroBoard[i].length; k++) {
-                if(macroBoard[i][k].equals(IField.AVAILABLE_FIELD))
-                    macroBoard[i][k] = IField.EMPTY_FIELD;
-            }
-
-        int xTrans = move.getX()%3;
-        int yTrans = move.getY()%3;
-
-        if(macroBoard[xTrans][yTrans].equals(IField.EMPTY_FIELD))
-            macroBoard[xTrans][yTrans] = IField.AVAILABLE_FIELD;
-        else {
-            // Field is already won, set all fields not won to avail.
-            for (int i = 0; i < macroBoard.length; i++)
-                for (int k = 0; k < macroBoard[i].length; k++) {
-                    if(macroBoard[i][k].equals(IField.EMPTY_FIELD))
-                        macroBoard[i][k] = IField.AVAILABLE_FIELD;
-                }
-        }
+        int mask = RulesTable.ownerMask(board, move.getX(), move.getY(), currentPlayer);
+        return RulesTable.isWinThrough(mask, RulesTable.cellBit(move.getX(), move.getY()));
     }
 }
@@ -0,0 +1,326 @@
+package dk.easv.bll.game;
+
+import dk.easv.bll.field.BitboardField;
+import dk.easv.bll.field.Cell;
+import dk.easv.bll.field.IField;
+import dk.easv.bll.game.GameManager.GameOverState;
+import dk.easv.bll.move.IMove;
+import dk.easv.bll.move.Move;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The rules of Ultimate Tic-Tac-Toe, played on a single game state.
+ *
+ * GameManager plays its games through a GameSimulator, so bots that use one
+ * for their searches and playouts play by exactly the same rules, and get any
+ * speedup made here for free. A simulator works directly on the masks of the
+ * field and keeps the hash of the position up to date.
+ *
+ * Use copyOf to get a fast private copy of the state a bot is given, copy()
+ * to branch off a simulator, and makeMove/unmakeMove to walk a game tree
+ * without copying at all.
+ */
+public class GameSimulator {
+
+    private static final GameOverState[] GAME_OVER_STATES = GameOverState.values();
+
+    private final IGameState currentState;
+    private int currentPlayer; //player0 == 0 && player1 == 1
+    private volatile GameOverState gameOver; // read by the GUI while a bot is playing
+    private long hash; // Zobrist hash of the position, updated move by move
+
+    // Undo stack for makeMove/unmakeMove, three longs per move (see pushUndo).
+    // Only allocated when needed, as most copies never take a move back
+    private long[] undoStack;
+    private int undoSize = 0;
+
+    /**
+     * Plays on the given state, changing it in place. The current player is taken
+     * from the move number and the game over state from the macroboard.
+     * The hash is computed from the state, see Zobrist.hash.
+     * @param currentState The state to play on
+     */
+    public GameSimulator(IGameState currentState) {
+        this.currentState = currentState;
+        currentPlayer = currentPlayer(currentState);
+        gameOver = getGameOver(currentState.getField());
+        hash = Zobrist.hash(currentState);
+    }
+
+    private GameSimulator(IGameState currentState, int currentPlayer, GameOverState gameOver, long hash) {
+        this.currentState = currentState;
+        this.currentPlayer = currentPlayer;
+        this.gameOver = gameOver;
+        this.hash = hash;
+    }
+
+    /**
+     * Creates a simulator on a private copy of the state, using a BitboardField
+     * for speed. The state is not changed, and its String views are not touched.
+     * @param state The state to copy, e.g. the one given to IBot.doMove
+     * @return A simulator ready to play the next move
+     */
+    public static GameSimulator copyOf(IGameState state) {
+        IField field = state.getField();
+        GameState copyState = new GameState(new BitboardField());
+        IField copy = copyState.getField();
+        for (int micro = 0; micro < 9; micro++)
+            for (int player = 0; player < 2; player++) {
+                int stones = field.getStones(player, micro);
+                while (stones != 0) {
+                    int bit = Integer.numberOfTrailingZeros(stones);
+                    stones &= stones - 1;
+                    copy.setCell((micro / 3) * 3 + bit / 3, (micro % 3) * 3 + bit % 3, Cell.of(player));
+                }
+            }
+        copy.setMacroMasks(field.getWonMask(0), field.getWonMask(1), field.getTiedMask(), field.getActiveMask());
+
+        copyState.setMoveNumber(state.getMoveNumber());
+        copyState.setRoundNumber(state.getRoundNumber());
+        copyState.setTimePerMove(state.getTimePerMove());
+        return new GameSimulator(copyState);
+    }
+
+    /**
+     * Creates an independent copy of this simulator and its state. The undo history is not copied.
+     */
+    public GameSimulator copy() {
+        GameState copyState = new GameState(currentState);
+        return new GameSimulator(copyState, currentPlayer, gameOver, hash);
+    }
+
+    /**
+     * @return The player (0 or 1) to move in the state, worked out from the move number
+     */
+    public static int currentPlayer(IGameState state) {
+        return state.getMoveNumber() % 2;
+    }
+
+    /**
+     * Works out the game over state from the macroboard alone.
+     * @return Win if a player has three microboards in a row, Tie if every microboard is decided, otherwise Active
+     */
+    public static GameOverState getGameOver(IField field) {
+        int won0 = field.getWonMask(0);
+        int won1 = field.getWonMask(1);
+        if (RulesTable.isWin(won0) || RulesTable.isWin(won1))
+            return GameOverState.Win;
+        if (RulesTable.isFull(won0 | won1 | field.getTiedMask()))
+            return GameOverState.Tie;
+        return GameOverState.Active;
+    }
+
+    public IGameState getCurrentState() {
+        return currentState;
+    }
+
+    public int getCurrentPlayer() {
+        return currentPlayer;
+    }
+
+    public void setCurrentPlayer(int player) {
+        currentPlayer = player;
+    }
+
+    public GameOverState getGameOver() {
+        return gameOver;
+    }
+
+    public void setGameOver(GameOverState state) {
+        gameOver = state;
+    }
+
+    /**
+     * @return The player (0 or 1) who won, or -1 if the game is not won
+     */
+    public int getWinner() {
+        return gameOver == GameOverState.Win ? (currentPlayer + 1) % 2 : -1;
+    }
+
+    /**
+     * @return true if the game is over or there are no moves left
+     */
+    public boolean isTerminal() {
+        return gameOver != GameOverState.Active || currentState.getField().getActiveMask() == 0;
+    }
+
+    /**
+     * @return The Zobrist hash of the position, the same as getCurrentState().getHash() but without computing it
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    /**
+     * @return A new list of the available moves, see IField.getAvailableMoves()
+     */
+    public List<IMove> getAvailableMoves() {
+        return currentState.getField().getAvailableMoves();
+    }
+
+    /**
+     * Writes the available moves into the array as cell indexes x*9 + y, without allocating.
+     * @param cells Array to fill, must have room for 81 moves
+     * @return The number of available moves
+     */
+    public int getAvailableMoves(int[] cells) {
+        return currentState.getField().getAvailableMoves(cells);
+    }
+
+    /**
+     * @return true if the cell is on the board, empty and in an active microboard
+     */
+    public boolean isLegal(int x, int y) {
+        if (x < 0 || 9 <= x) return false;
+        if (y < 0 || 9 <= y) return false;
+
+        IField field = currentState.getField();
+        int micro = (x / 3) * 3 + y / 3;
+        return (field.getActiveMask() & (1 << micro)) != 0
+                && (field.getOccupied(micro) & RulesTable.cellBit(x, y)) == 0;
+    }
+
+    /**
+     * Plays a move for the current player. Moves played this way can not be taken back.
+     * @return Returns true if the move was legal and played, false otherwise.
+     */
+    public boolean play(IMove move) {
+        return play(move.getX(), move.getY());
+    }
+
+    /**
+     * @see #play(IMove)
+     */
+    public boolean play(int x, int y) {
+        if (!isLegal(x, y))
+            return false;
+
+        undoSize = 0;
+        IField field = currentState.getField();
+        updateBoard(x, y, field.getWonMask(0), field.getWonMask(1), field.getTiedMask(), field.getActiveMask());
+        currentPlayer = (currentPlayer + 1) % 2;
+        return true;
+    }
+
+    /**
+     * Plays a move the same way as play, but remembers what it changed,
+     * so it can be taken back with unmakeMove.
+     * @return Returns true if the move was legal and played, false otherwise.
+     */
+    public boolean makeMove(int x, int y) {
+        if (!isLegal(x, y))
+            return false;
+
+        IField field = currentState.getField();
+        int won0 = field.getWonMask(0);
+        int won1 = field.getWonMask(1);
+        int tied = field.getTiedMask();
+        int active = field.getActiveMask();
+        pushUndo(x, y, won0, won1, tied, active);
+        updateBoard(x, y, won0, won1, tied, active);
+        currentPlayer = (currentPlayer + 1) % 2;
+        return true;
+    }
+
+    /**
+     * Takes back the latest move played with makeMove, restoring the cell,
+     * the macroboard, the game over state, the current player, the counters and the hash.
+     * @return Returns true if a move was taken back, false if there was nothing to undo.
+     */
+    public boolean unmakeMove() {
+        if (undoSize == 0)
+            return false;
+
+        undoSize -= 3;
+        long entry = undoStack[undoSize];
+        long counters = undoStack[undoSize + 1];
+        int cell = (int) (entry >>> 36) & 0x7F;
+
+        IField field = currentState.getField();
+        field.setCell(cell / 9, cell % 9, Cell.EMPTY);
+        field.setMacroMasks((int) entry & 0x1FF, (int) (entry >>> 9) & 0x1FF,
+                (int) (entry >>> 18) & 0x1FF, (int) (entry >>> 27) & 0x1FF);
+        gameOver = GAME_OVER_STATES[(int) (entry >>> 43) & 0x3];
+        currentPlayer = (int) (entry >>> 45) & 0x1;
+        currentState.setMoveNumber((int) (counters >>> 32));
+        currentState.setRoundNumber((int) counters);
+        hash = undoStack[undoSize + 2];
+        return true;
+    }
+
+    /**
+     * @return The number of moves played with makeMove that unmakeMove can still take back
+     */
+    public int getUndoDepth() {
+        return undoSize / 3;
+    }
+
+    /**
+     * Records the state a move is about to change. The first long holds the macroboard
+     * as won/won/tied/active masks (4 x 9 bits), the cell (7 bits), the game over state
+     * (2 bits) and the current player (1 bit). The second long holds the move and round numbers,
+     * the third the position hash.
+     */
+    private void pushUndo(int x, int y, int won0, int won1, int tied, int active) {
+        if (undoStack == null)
+            undoStack = new long[3 * 32];
+        else if (undoSize + 3 > undoStack.length)
+            undoStack = Arrays.copyOf(undoStack, undoStack.length * 2);
+
+        undoStack[undoSize] = won0 | ((long) won1 << 9) | ((long) tied << 18) | ((long) active << 27)
+                | ((long) (x * 9 + y) << 36) | ((long) gameOver.ordinal() << 43) | ((long) currentPlayer << 45);
+        undoStack[undoSize + 1] = ((long) currentState.getMoveNumber() << 32) | (currentState.getRoundNumber() & 0xFFFFFFFFL);
+        undoStack[undoSize + 2] = hash;
+        undoSize += 3;
+    }
+
+    /**
+     * Places the stone, decides the microboard and the game, and sends the
+     * next player to the microboard matching the cell. Works on the masks
+     * of the field (as they were before the move) and keeps the hash up to date as it goes.
+     */
+    private void updateBoard(int x, int y, int won0, int won1, int tied, int active) {
+        IField field = currentState.getField();
+        field.setCell(x, y, Cell.of(currentPlayer));
+        currentState.setMoveNumber(currentState.getMoveNumber() + 1);
+        if (currentState.getMoveNumber() % 2 == 0) { currentState.setRoundNumber(currentState.getRoundNumber() + 1); }
+
+        int micro = (x / 3) * 3 + y / 3;
+        int microBit = 1 << micro;
+        long hash = this.hash ^ Zobrist.active(active)
+                ^ Zobrist.cell(currentPlayer, x * 9 + y) ^ Zobrist.side();
+
+        if (((won0 | won1 | tied) & microBit) == 0) {
+            if (RulesTable.isWinThrough(field.getStones(currentPlayer, micro), RulesTable.cellBit(x, y))) {
+                if (currentPlayer == 0) won0 |= microBit;
+                else won1 |= microBit;
+                hash ^= Zobrist.decided(currentPlayer, micro);
+            }
+            else if (RulesTable.isFull(field.getOccupied(micro))) {
+                tied |= microBit;
+                hash ^= Zobrist.decided(2, micro);
+            }
+
+            //Check macro win
+            if (RulesTable.isWinThrough(currentPlayer == 0 ? won0 : won1, microBit))
+                gameOver = GameOverState.Win;
+            else if (RulesTable.isFull(won0 | won1 | tied))
+                gameOver = GameOverState.Tie;
+        }
+
+        int decided = won0 | won1 | tied;
+        int targetBit = RulesTable.cellBit(x, y);
+        active = (decided & targetBit) == 0 ? targetBit : ~decided & RulesTable.FULL_MASK;
+        field.setMacroMasks(won0, won1, tied, active);
+        this.hash = hash ^ Zobrist.active(active);
+    }
+
+    /**
+     * @return A move for the cell index x*9 + y
+     */
+    public static IMove toMove(int cell) {
+        return new Move(cell / 9, cell % 9);
+    }
+}
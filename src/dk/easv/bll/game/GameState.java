@@ -1,5 +1,6 @@
 package dk.easv.bll.game;
 
+import dk.easv.bll.field.BitboardField;
 import dk.easv.bll.field.Field;
 import dk.easv.bll.field.IField;
 
@@ -15,13 +16,32 @@ public class GameState implements IGameState{
         roundNumber=0;
     }
 
+    /**
+     * Creates an empty game on the given field implementation,
+     * e.g. a BitboardField for fast simulations.
+     * @param field The field to play on
+     */
+    public GameState(IField field){
+        this.field = field;
+        field.clearBoard();
+        moveNumber=0;
+        roundNumber=0;
+    }
+
     public GameState(IGameState state) {
-        field = new Field();
-        field.setMacroboard(state.getField().getMacroboard());
-        field.setBoard(state.getField().getBoard());
+        if (state.getField() instanceof BitboardField) {
+            field = new BitboardField((BitboardField) state.getField());
+        } else if (state.getField() instanceof Field) {
+            field = new Field((Field) state.getField());
+        } else {
+            field = new Field();
+            field.setMacroboard(state.getField().getMacroboard());
+            field.setBoard(state.getField().getBoard());
+        }
 
         moveNumber = state.getMoveNumber();
         roundNumber = state.getRoundNumber();
+        timePerMove = state.getTimePerMove();
     }
 
     @Override
@@ -18,4 +18,14 @@ public interface IGameState {
 
     int getTimePerMove();
     void setTimePerMove(int milliSeconds);
+
+    /**
+     * @return The 64-bit Zobrist hash of the position, computed from the field on every call (see Zobrist.hash),
+     * so it is right however the state was filled in. Equal positions (stones, decided microboards,
+     * active microboard and side to move) have equal hashes. Searches keep it up to date move by move
+     * with a GameSimulator instead.
+     */
+    default long getHash() {
+        return Zobrist.hash(this);
+    }
 }
@@ -0,0 +1,186 @@
+package dk.easv.bll.game;
+
+import dk.easv.bll.field.IField;
+import dk.easv.bll.move.IMove;
+
+/**
+ * Everything about a single 3x3 board with both players' stones on it, worked out
+ * once for all 3^9 = 19683 of them when the class is loaded.
+ *
+ * A board is looked up by its index, see index: each cell is a base 3 digit that is
+ * 0 for empty, 1 for player 0 and 2 for player 1. For each index the table keeps the
+ * status, the empty cells that would complete a line for each player, the number of
+ * lines each player is one stone short of, and a heuristic score. Where RulesTable
+ * answers questions about the stones of one player, this answers them for the whole
+ * board in one lookup. Boards where both players have a line can not happen in a game,
+ * they count as won by player 0.
+ */
+public final class MicroBoardTable {
+
+    public static final int SIZE = 19683;
+
+    public static final int OPEN = 0;
+    public static final int WIN_0 = 1;
+    public static final int WIN_1 = 2;
+    public static final int TIE = 3;
+
+    // Heuristic weights, as in MortenBoT's evaluation
+    private static final int THREAT = 10;
+    private static final int COMBO = 3;
+
+    private static final int[] LINES = {
+            0b000000111, 0b000111000, 0b111000000, // x fixed
+            0b001001001, 0b010010010, 0b100100100, // y fixed
+            0b100010001, 0b001010100 };            // diagonals
+    // A corner and a cell next to it
+    private static final int[] COMBOS = {
+            0b000000011, 0b000001001, 0b000010001, // Corner (0, 0)
+            0b000000110, 0b000100100, 0b000010100, // Corner (0, 2)
+            0b001001000, 0b011000000, 0b001010000, // Corner (2, 0)
+            0b100100000, 0b110000000, 0b100010000  // Corner (2, 2)
+    };
+
+    private static final short[] TERNARY = new short[512]; // The index of a mask of player 0's stones
+    private static final byte[] STATUS = new byte[SIZE];
+    private static final short[] WINNING_CELLS = new short[2 * SIZE]; // Player 1's come after player 0's
+    private static final byte[] THREATS = new byte[2 * SIZE];
+    private static final short[] HEURISTIC = new short[SIZE];
+    private static final long BUILD_NANOS;
+
+    static {
+        long start = System.nanoTime();
+        for (int mask = 0; mask < 512; mask++) {
+            int index = 0;
+            for (int bit = 8; bit >= 0; bit--)
+                index = index * 3 + ((mask >> bit) & 1);
+            TERNARY[mask] = (short) index;
+        }
+        for (int stones0 = 0; stones0 < 512; stones0++) {
+            for (int stones1 = 0; stones1 < 512; stones1++) {
+                if ((stones0 & stones1) == 0)
+                    build(stones0, stones1);
+            }
+        }
+        BUILD_NANOS = System.nanoTime() - start;
+    }
+
+    private static void build(int stones0, int stones1) {
+        int index = index(stones0, stones1);
+        int empty = ~(stones0 | stones1) & RulesTable.FULL_MASK;
+        if (RulesTable.isWin(stones0))
+            STATUS[index] = WIN_0;
+        else if (RulesTable.isWin(stones1))
+            STATUS[index] = WIN_1;
+        else if (empty == 0)
+            STATUS[index] = TIE;
+        else
+            STATUS[index] = OPEN;
+        WINNING_CELLS[index] = (short) (RulesTable.threats(stones0) & empty);
+        WINNING_CELLS[SIZE + index] = (short) (RulesTable.threats(stones1) & empty);
+        int heuristic = 0;
+        for (int line : LINES) {
+            if (Integer.bitCount(line & empty) == 1) {
+                if (Integer.bitCount(line & stones0) == 2) {
+                    THREATS[index]++;
+                    heuristic += THREAT;
+                } else if (Integer.bitCount(line & stones1) == 2) {
+                    THREATS[SIZE + index]++;
+                    heuristic -= THREAT;
+                }
+            }
+        }
+        for (int combo : COMBOS) {
+            if (Integer.bitCount(combo & empty) == 1) {
+                if ((combo & stones0) != 0)
+                    heuristic += COMBO;
+                else if ((combo & stones1) != 0)
+                    heuristic -= COMBO;
+            }
+        }
+        HEURISTIC[index] = (short) heuristic;
+    }
+
+    private MicroBoardTable() {
+    }
+
+    /**
+     * @param stones0 The 9-bit mask of player 0's stones
+     * @param stones1 The 9-bit mask of player 1's stones, which must not overlap player 0's
+     * @return The index of the board in the table
+     */
+    public static int index(int stones0, int stones1) {
+        return TERNARY[stones0] + 2 * TERNARY[stones1];
+    }
+
+    /**
+     * @param micro Microboard index (x/3)*3 + (y/3)
+     * @return The index of the microboard of the field in the table
+     */
+    public static int index(IField field, int micro) {
+        return TERNARY[field.getStones(0, micro)] + 2 * TERNARY[field.getStones(1, micro)];
+    }
+
+    /**
+     * @return OPEN, WIN_0, WIN_1 or TIE. A tie is a full board without a line
+     */
+    public static int status(int index) {
+        return STATUS[index];
+    }
+
+    /**
+     * @param player 0 or 1
+     * @return The mask of the empty cells where the player would complete a line
+     */
+    public static int winningCells(int index, int player) {
+        return WINNING_CELLS[player * SIZE + index];
+    }
+
+    /**
+     * @param player 0 or 1
+     * @return The number of lines with two of the player's stones and an empty cell
+     */
+    public static int threatCount(int index, int player) {
+        return THREATS[player * SIZE + index];
+    }
+
+    /**
+     * @param player 0 or 1
+     * @return true if the player can complete a line in two or more cells, so the opponent can not block them all
+     */
+    public static boolean isFork(int index, int player) {
+        int cells = WINNING_CELLS[player * SIZE + index];
+        return (cells & (cells - 1)) != 0;
+    }
+
+    /**
+     * @param move A move to an empty cell of the field
+     * @param player 0 or 1
+     * @return true if the move completes a line for the player in its microboard
+     */
+    public static boolean isWinningMove(IField field, IMove move, int player) {
+        int index = index(field, (move.getX() / 3) * 3 + move.getY() / 3);
+        return (winningCells(index, player) & RulesTable.cellBit(move.getX(), move.getY())) != 0;
+    }
+
+    /**
+     * @return 10 per threat and 3 per combo (a corner and a cell next to it, one taken and one empty)
+     * of player 0, less those of player 1
+     */
+    public static int heuristic(int index) {
+        return HEURISTIC[index];
+    }
+
+    /**
+     * @return The time it took to build the table when the class was loaded, in nanoseconds
+     */
+    public static long getBuildNanos() {
+        return BUILD_NANOS;
+    }
+
+    /**
+     * @return The memory taken by the table's arrays, not counting the array headers
+     */
+    public static int getBytes() {
+        return TERNARY.length * 2 + STATUS.length + WINNING_CELLS.length * 2 + THREATS.length + HEURISTIC.length * 2;
+    }
+}
@@ -0,0 +1,125 @@
+package dk.easv.bll.game;
+
+import dk.easv.bll.field.IField;
+
+/**
+ * Precomputed tic-tac-toe rules for a single 3x3 board, used for both the
+ * microboards and the macroboard.
+ *
+ * A 3x3 board is given as a 9-bit mask where bit (x%3)*3 + (y%3) is set for
+ * the cells owned by one player (or, for isFull, the occupied cells).
+ * Every check is a single array lookup.
+ */
+public final class RulesTable {
+
+    public static final int FULL_MASK = 0x1FF;
+
+    private static final int[] LINES = {
+            0b000000111, 0b000111000, 0b111000000, // x fixed
+            0b001001001, 0b010010010, 0b100100100, // y fixed
+            0b100010001, 0b001010100 };            // diagonals
+
+    private static final boolean[] WIN = new boolean[512];
+    private static final short[] LINE_CELLS = new short[512];
+    private static final short[] THREATS = new short[512];
+    private static final boolean[] FULL = new boolean[512];
+
+    static {
+        for (int mask = 0; mask < 512; mask++) {
+            int lineCells = 0;
+            for (int line : LINES)
+                if ((mask & line) == line)
+                    lineCells |= line;
+            LINE_CELLS[mask] = (short) lineCells;
+            WIN[mask] = lineCells != 0;
+            FULL[mask] = mask == FULL_MASK;
+        }
+        for (int mask = 0; mask < 512; mask++) {
+            int threats = 0;
+            for (int cell = 0; cell < 9; cell++) {
+                int bit = 1 << cell;
+                if ((mask & bit) == 0 && (LINE_CELLS[mask | bit] & bit) != 0)
+                    threats |= bit;
+            }
+            THREATS[mask] = (short) threats;
+        }
+    }
+
+    private RulesTable() {
+    }
+
+    /**
+     * @param mask The cells owned by a player
+     * @return true if the cells contain a completed line
+     */
+    public static boolean isWin(int mask) {
+        return WIN[mask];
+    }
+
+    /**
+     * @param mask The cells owned by a player
+     * @param bit The bit of a single cell
+     * @return true if the cells contain a completed line going through the given cell
+     */
+    public static boolean isWinThrough(int mask, int bit) {
+        return (LINE_CELLS[mask] & bit) != 0;
+    }
+
+    /**
+     * @param mask The cells owned by a player
+     * @return The cells not in the mask that would complete a line.
+     * Mask the result with the free cells to get the winning moves.
+     */
+    public static int threats(int mask) {
+        return THREATS[mask];
+    }
+
+    /**
+     * @param occupied The cells that are taken
+     * @return true if there are no cells left
+     */
+    public static boolean isFull(int occupied) {
+        return FULL[occupied];
+    }
+
+    /**
+     * @param x Column on the 9x9 board
+     * @param y Row on the 9x9 board
+     * @return The bit of the cell inside its 3x3 board
+     */
+    public static int cellBit(int x, int y) {
+        return 1 << ((x % 3) * 3 + y % 3);
+    }
+
+    /**
+     * Builds the mask of the cells owned by a player in the 3x3 area of a String board
+     * that contains (x,y). Works for the 9x9 board as well as the 3x3 macroboard.
+     */
+    public static int ownerMask(String[][] board, int x, int y, String player) {
+        int startX = x - x % 3;
+        int startY = y - y % 3;
+        int mask = 0;
+        for (int i = 0; i < 3; i++)
+            for (int k = 0; k < 3; k++)
+                if (board[startX + i][startY + k].equals(player))
+                    mask |= 1 << (i * 3 + k);
+        return mask;
+    }
+
+    /**
+     * Builds the mask of the cells that are taken in the 3x3 area of a String board
+     * that contains (x,y), i.e. the cells that are neither EMPTY_FIELD nor AVAILABLE_FIELD.
+     */
+    public static int occupiedMask(String[][] board, int x, int y) {
+        int startX = x - x % 3;
+        int startY = y - y % 3;
+        int mask = 0;
+        for (int i = 0; i < 3; i++)
+            for (int k = 0; k < 3; k++) {
+                String value = board[startX + i][startY + k];
+                if (!value.equals(IField.EMPTY_FIELD) && !value.equals(IField.AVAILABLE_FIELD))
+                    mask |= 1 << (i * 3 + k);
+            }
+        return mask;
+    }
+}
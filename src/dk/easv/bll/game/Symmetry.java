@@ -0,0 +1,175 @@
+package dk.easv.bll.game;
+
+import dk.easv.bll.field.IField;
+import dk.easv.bll.move.IMove;
+import dk.easv.bll.move.Move;
+
+/**
+ * The 8 symmetries (rotations and reflections) of the Ultimate Tic-Tac-Toe board.
+ *
+ * A symmetry of the 9x9 board maps every microboard onto another microboard
+ * with the same symmetry applied inside it, so the rules (including which
+ * microboard is sent to next) are unchanged. Positions that are mirror images
+ * or rotations of each other are therefore equally good, and caches can store
+ * a single entry for all of them under the canonical hash.
+ *
+ * The canonical orientation of a position is the transform that gives the
+ * lowest Zobrist hash. Transform 0 is the identity.
+ */
+public final class Symmetry {
+
+    public static final int TRANSFORMS = 8;
+
+    private static final int[][] CELL = new int[TRANSFORMS][81];
+    private static final int[][] MICRO = new int[TRANSFORMS][9];
+    private static final int[] INVERSE = new int[TRANSFORMS];
+
+    static {
+        for (int t = 0; t < TRANSFORMS; t++) {
+            for (int x = 0; x < 9; x++)
+                for (int y = 0; y < 9; y++)
+                    CELL[t][x * 9 + y] = map(t, x, y, 8);
+            for (int x = 0; x < 3; x++)
+                for (int y = 0; y < 3; y++) {
+                    int mapped = map(t, x, y, 2);
+                    MICRO[t][x * 3 + y] = (mapped / 9) * 3 + mapped % 9;
+                }
+        }
+        for (int t = 0; t < TRANSFORMS; t++)
+            for (int u = 0; u < TRANSFORMS; u++)
+                if (CELL[u][CELL[t][1]] == 1 && CELL[u][CELL[t][9]] == 9)
+                    INVERSE[t] = u;
+    }
+
+    private Symmetry() {
+    }
+
+    // Maps (x,y) on an (n+1)x(n+1) grid, returned as x*9 + y
+    private static int map(int t, int x, int y, int n) {
+        switch (t) {
+            case 0: return x * 9 + y;
+            case 1: return y * 9 + (n - x);           // rotate 90
+            case 2: return (n - x) * 9 + (n - y);     // rotate 180
+            case 3: return (n - y) * 9 + x;           // rotate 270
+            case 4: return (n - x) * 9 + y;           // mirror x
+            case 5: return x * 9 + (n - y);           // mirror y
+            case 6: return y * 9 + x;                 // transpose
+            default: return (n - y) * 9 + (n - x);    // anti-transpose
+        }
+    }
+
+    /**
+     * @return The transform that undoes t
+     */
+    public static int inverse(int t) {
+        return INVERSE[t];
+    }
+
+    /**
+     * @param t Transform 0-7
+     * @param cell Cell index x*9 + y
+     * @return The cell index the cell is moved to
+     */
+    public static int transformCell(int t, int cell) {
+        return CELL[t][cell];
+    }
+
+    /**
+     * @param t Transform 0-7
+     * @param micro Microboard index (x/3)*3 + (y/3)
+     * @return The microboard index the microboard is moved to
+     */
+    public static int transformMicro(int t, int micro) {
+        return MICRO[t][micro];
+    }
+
+    public static IMove transformMove(int t, IMove move) {
+        int cell = CELL[t][move.getX() * 9 + move.getY()];
+        return new Move(cell / 9, cell % 9);
+    }
+
+    /**
+     * @return The transform that turns the state into its canonical orientation
+     */
+    public static int canonicalTransform(IGameState state) {
+        long[] hashes = hashes(state);
+        int best = 0;
+        for (int t = 1; t < TRANSFORMS; t++)
+            if (hashes[t] < hashes[best])
+                best = t;
+        return best;
+    }
+
+    /**
+     * @return The hash of the canonical orientation, the same for all 8 symmetric positions
+     */
+    public static long canonicalHash(IGameState state) {
+        long[] hashes = hashes(state);
+        long best = hashes[0];
+        for (int t = 1; t < TRANSFORMS; t++)
+            best = Math.min(best, hashes[t]);
+        return best;
+    }
+
+    /**
+     * Creates a transformed copy of the state. Use the inverse transform to get back.
+     * @param state The state to transform, it is not changed
+     * @param t Transform 0-7
+     * @return A new GameState with the board and macroboard transformed
+     */
+    public static IGameState transform(IGameState state, int t) {
+        IField field = state.getField();
+        GameState transformed = new GameState(state);
+        IField target = transformed.getField();
+        for (int x = 0; x < 9; x++)
+            for (int y = 0; y < 9; y++) {
+                int cell = CELL[t][x * 9 + y];
+                target.setCell(cell / 9, cell % 9, field.getCell(x, y));
+            }
+        for (int x = 0; x < 3; x++)
+            for (int y = 0; y < 3; y++) {
+                int micro = MICRO[t][x * 3 + y];
+                target.setMacroCell(micro / 3, micro % 3, field.getMacroCell(x, y));
+            }
+        transformed.setTimePerMove(state.getTimePerMove());
+        return transformed;
+    }
+
+    /**
+     * Computes the Zobrist hash of all 8 orientations of the state in one pass.
+     */
+    public static long[] hashes(IGameState state) {
+        IField field = state.getField();
+        long[] hashes = new long[TRANSFORMS];
+        for (int micro = 0; micro < 9; micro++)
+            for (int player = 0; player < 2; player++) {
+                int stones = field.getStones(player, micro);
+                while (stones != 0) {
+                    int bit = Integer.numberOfTrailingZeros(stones);
+                    stones &= stones - 1;
+                    int cell = ((micro / 3) * 3 + bit / 3) * 9 + (micro % 3) * 3 + bit % 3;
+                    for (int t = 0; t < TRANSFORMS; t++)
+                        hashes[t] ^= Zobrist.cell(player, CELL[t][cell]);
+                }
+            }
+        int won0 = field.getWonMask(0);
+        int won1 = field.getWonMask(1);
+        int tied = field.getTiedMask();
+        int active = field.getActiveMask();
+        for (int t = 0; t < TRANSFORMS; t++) {
+            int transformedActive = 0;
+            for (int micro = 0; micro < 9; micro++) {
+                int bit = 1 << micro;
+                int to = MICRO[t][micro];
+                if ((won0 & bit) != 0) hashes[t] ^= Zobrist.decided(0, to);
+                else if ((won1 & bit) != 0) hashes[t] ^= Zobrist.decided(1, to);
+                else if ((tied & bit) != 0) hashes[t] ^= Zobrist.decided(2, to);
+                if ((active & bit) != 0) transformedActive |= 1 << to;
+            }
+            hashes[t] ^= Zobrist.active(transformedActive);
+            if (state.getMoveNumber() % 2 == 1)
+                hashes[t] ^= Zobrist.side();
+        }
+        return hashes;
+    }
+}
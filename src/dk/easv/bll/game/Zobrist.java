@@ -0,0 +1,112 @@
+package dk.easv.bll.game;
+
+import dk.easv.bll.field.IField;
+
+/**
+ * Zobrist keys for identifying a position with a single 64-bit number.
+ *
+ * The hash of a position is the XOR of the keys for every stone on the board,
+ * every won or tied microboard, the active microboard (only when play is
+ * restricted to exactly one microboard) and the side to move (when it is
+ * player 1's turn). The empty board with player 0 to move hashes to 0.
+ *
+ * GameSimulator keeps the hash up to date move by move, hash() computes it
+ * from scratch, e.g. for IGameState.getHash().
+ * The keys come from a fixed seed, so hashes are the same on every run and
+ * can be stored in files (e.g. opening books).
+ */
+public final class Zobrist {
+
+    private static final long[][] CELL = new long[2][81];
+    private static final long[][] DECIDED = new long[3][9]; // won by player 0, won by player 1, tied
+    private static final long[] ACTIVE = new long[9];
+    private static final long SIDE;
+
+    static {
+        long seed = 0x5DEECE66DL;
+        for (int player = 0; player < 2; player++)
+            for (int cell = 0; cell < 81; cell++)
+                CELL[player][cell] = seed = splitMix(seed);
+        for (int owner = 0; owner < 3; owner++)
+            for (int micro = 0; micro < 9; micro++)
+                DECIDED[owner][micro] = seed = splitMix(seed);
+        for (int micro = 0; micro < 9; micro++)
+            ACTIVE[micro] = seed = splitMix(seed);
+        SIDE = splitMix(seed);
+    }
+
+    private Zobrist() {
+    }
+
+    // SplitMix64, written out so the keys never change with the JDK version
+    private static long splitMix(long state) {
+        long z = state + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * @param player 0 or 1
+     * @param cell Cell index x*9 + y
+     */
+    public static long cell(int player, int cell) {
+        return CELL[player][cell];
+    }
+
+    /**
+     * @param owner 0 or 1 for a won microboard, 2 for a tied one
+     * @param micro Microboard index (x/3)*3 + (y/3)
+     */
+    public static long decided(int owner, int micro) {
+        return DECIDED[owner][micro];
+    }
+
+    /**
+     * @param activeMask The macroboard mask of microboards that can be played in
+     * @return The key for the active microboard, or 0 if the mask is not a single microboard
+     */
+    public static long active(int activeMask) {
+        if (activeMask == 0 || (activeMask & (activeMask - 1)) != 0)
+            return 0;
+        return ACTIVE[Integer.numberOfTrailingZeros(activeMask)];
+    }
+
+    public static long side() {
+        return SIDE;
+    }
+
+    /**
+     * Computes the hash of a state from scratch.
+     * The side to move is taken from the move number.
+     */
+    public static long hash(IGameState state) {
+        IField field = state.getField();
+        long hash = 0;
+        for (int micro = 0; micro < 9; micro++) {
+            int base = ((micro / 3) * 3) * 9 + (micro % 3) * 3;
+            for (int player = 0; player < 2; player++) {
+                int stones = field.getStones(player, micro);
+                while (stones != 0) {
+                    int bit = Integer.numberOfTrailingZeros(stones);
+                    stones &= stones - 1;
+                    hash ^= CELL[player][base + (bit / 3) * 9 + bit % 3];
+                }
+            }
+        }
+        int won0 = field.getWonMask(0);
+        int won1 = field.getWonMask(1);
+        int tied = field.getTiedMask();
+        int active = field.getActiveMask();
+        for (int micro = 0; micro < 9; micro++) {
+            int bit = 1 << micro;
+            if ((won0 & bit) != 0) hash ^= DECIDED[0][micro];
+            else if ((won1 & bit) != 0) hash ^= DECIDED[1][micro];
+            else if ((tied & bit) != 0) hash ^= DECIDED[2][micro];
+        }
+        hash ^= active(active);
+        if (state.getMoveNumber() % 2 == 1)
+            hash ^= SIDE;
+        return hash;
+    }
+}
@@ -358,6 +358,7 @@ public class AppController implements Initializable {
             Scene scene = new Scene(root);
             primaryStage.setScene(scene);
             primaryStage.showAndWait();
+            controller.stopPondering();
         }
     }
 }
@@ -68,6 +68,7 @@ public class UTTTGameController implements Initializable {
         else if (bot0 != null && player1 != null) {
             // FIX HERE, KEEPS ASKING FOR VALID MOVE IF BOT PLAYS INVALID good for player bot not bot
             doBotMove();
+            startPondering();
         }
         // AIvsAI
         else if (bot0 != null && bot1 != null) {
@@ -258,6 +259,7 @@ public class UTTTGameController implements Initializable {
                                         int currentPlayer = model.getCurrentPlayer();
                                         Boolean valid = model.doMove();
                                         checkAndLockIfGameEnd(currentPlayer);
+                                        startPondering();
                                     }
                                 }
                         );
@@ -270,8 +272,25 @@ public class UTTTGameController implements Initializable {
         }
     }
 
+    // A bot that can think on the human's time does so until its next move, see IPonderingBot
+    private void startPondering() {
+        IBot bot = bot0 != null ? bot0 : bot1;
+        if (bot instanceof IPonderingBot && model.getGameOverState() == GameManager.GameOverState.Active)
+            ((IPonderingBot) bot).startPondering(model.getGameState());
+    }
+
+    /**
+     * Stops the bots from thinking on the opponent's time. Called when the game ends or the window closes.
+     */
+    public void stopPondering() {
+        for (IBot bot : new IBot[]{bot0, bot1})
+            if (bot instanceof IPonderingBot)
+                ((IPonderingBot) bot).stopPondering();
+    }
+
     private void checkAndLockIfGameEnd(int currentPlayer) {
         if (model.getGameOverState() != GameManager.GameOverState.Active) {
+            stopPondering();
             String[][] macroboard = model.getMacroboard();
             // Lock game
             for (int i = 0; i < 3; i++) {